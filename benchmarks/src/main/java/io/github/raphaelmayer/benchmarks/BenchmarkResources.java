@@ -0,0 +1,58 @@
+package io.github.raphaelmayer.benchmarks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import io.github.raphaelmayer.models.Ontology;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.util.JsonUtils;
+
+/**
+ * Locates the bundled resources for the benchmarks. They are resolved against
+ * the "compositebaas.resources" system property, which defaults to the
+ * resources of the parent project when running from the benchmarks directory.
+ */
+public class BenchmarkResources {
+
+    public static final String RESOURCE_DIRECTORY = System.getProperty("compositebaas.resources",
+            ".." + File.separator + "src" + File.separator + "resources");
+
+    private static final PrintStream STDOUT = System.out;
+
+    private BenchmarkResources() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static Ontology loadOntology() {
+        return JsonUtils.parseFile(resolve("function_ontology.json"), Ontology.class);
+    }
+
+    public static Transformation loadTransformation(String fileName) {
+        return JsonUtils.parseFile(resolve(fileName), Transformation.class);
+    }
+
+    public static String resolve(String fileName) {
+        return RESOURCE_DIRECTORY + File.separator + fileName;
+    }
+
+    /**
+     * The services log every step to stdout, which would dominate the
+     * measurements. Benchmarks silence it for the duration of a trial.
+     */
+    public static void silenceStdout() {
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    public static void restoreStdout() {
+        System.setOut(STDOUT);
+    }
+}
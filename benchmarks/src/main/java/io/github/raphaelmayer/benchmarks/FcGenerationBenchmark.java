@@ -0,0 +1,79 @@
+package io.github.raphaelmayer.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.raphaelmayer.models.FunctionChoreography;
+import io.github.raphaelmayer.models.Ontology;
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.FcGenerationService;
+import io.github.raphaelmayer.services.PathfindingService;
+
+/**
+ * Measures {@link FcGenerationService#generateFunctionChoreography} for the
+ * service paths of the sample input files. This includes writing the YAML
+ * file, which goes to a temporary directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FcGenerationBenchmark {
+
+    @Param({ "input.json", "input2.json" })
+    public String inputFile;
+
+    private Ontology ontology;
+    private Transformation transformation;
+    private List<ServiceFunction> servicePath;
+    private File directory;
+    private String fcName;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ontology = BenchmarkResources.loadOntology();
+        transformation = BenchmarkResources.loadTransformation(inputFile);
+        servicePath = new PathfindingService(ontology).findServicePath(transformation);
+        directory = Files.createTempDirectory("fc-benchmark").toFile();
+        fcName = new File(directory, "benchmark").getPath();
+        BenchmarkResources.silenceStdout();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkResources.restoreStdout();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public FunctionChoreography generateFunctionChoreography() {
+        // the service keeps the data of the generated workflow, so it is created per choreography
+        return new FcGenerationService(ontology).generateFunctionChoreography(fcName, servicePath, transformation);
+    }
+}
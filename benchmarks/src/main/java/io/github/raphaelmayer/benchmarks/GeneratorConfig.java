@@ -0,0 +1,138 @@
+package io.github.raphaelmayer.benchmarks;
+
+/**
+ * The properties of a generated workload. Every property has a default, so a
+ * configuration file only needs to list the ones that differ.
+ */
+public class GeneratorConfig {
+
+    private int functions = 1000;
+    private int types = 64;
+    private int languages = 32;
+    private int formats = 8;
+    // type conversions move a type from one layer to the next
+    private int layers = 8;
+    private int branchingFactor = 3;
+    private int providers = 3;
+    private int regions = 8;
+    private int regionsPerFunction = 3;
+    private int extraDataOuts = 1;
+    private int optionalDataIns = 1;
+    private int transformations = 10;
+    private long seed = 42L;
+
+    public int getFunctions() {
+        return functions;
+    }
+
+    public void setFunctions(int functions) {
+        this.functions = functions;
+    }
+
+    public int getTypes() {
+        return types;
+    }
+
+    public void setTypes(int types) {
+        this.types = types;
+    }
+
+    public int getLanguages() {
+        return languages;
+    }
+
+    public void setLanguages(int languages) {
+        this.languages = languages;
+    }
+
+    public int getFormats() {
+        return formats;
+    }
+
+    public void setFormats(int formats) {
+        this.formats = formats;
+    }
+
+    public int getLayers() {
+        return layers;
+    }
+
+    public void setLayers(int layers) {
+        this.layers = layers;
+    }
+
+    /**
+     * @return the largest number of values a generated function accepts or
+     *         produces per attribute
+     */
+    public int getBranchingFactor() {
+        return branchingFactor;
+    }
+
+    public void setBranchingFactor(int branchingFactor) {
+        this.branchingFactor = branchingFactor;
+    }
+
+    public int getProviders() {
+        return providers;
+    }
+
+    public void setProviders(int providers) {
+        this.providers = providers;
+    }
+
+    public int getRegions() {
+        return regions;
+    }
+
+    public void setRegions(int regions) {
+        this.regions = regions;
+    }
+
+    public int getRegionsPerFunction() {
+        return regionsPerFunction;
+    }
+
+    public void setRegionsPerFunction(int regionsPerFunction) {
+        this.regionsPerFunction = regionsPerFunction;
+    }
+
+    /**
+     * @return the number of data outputs a function has besides 'fileNames'
+     */
+    public int getExtraDataOuts() {
+        return extraDataOuts;
+    }
+
+    public void setExtraDataOuts(int extraDataOuts) {
+        this.extraDataOuts = extraDataOuts;
+    }
+
+    /**
+     * @return the number of optional data inputs a function reads from the data
+     *         outputs of other functions
+     */
+    public int getOptionalDataIns() {
+        return optionalDataIns;
+    }
+
+    public void setOptionalDataIns(int optionalDataIns) {
+        this.optionalDataIns = optionalDataIns;
+    }
+
+    public int getTransformations() {
+        return transformations;
+    }
+
+    public void setTransformations(int transformations) {
+        this.transformations = transformations;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+}
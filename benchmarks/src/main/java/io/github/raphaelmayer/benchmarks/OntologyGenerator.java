@@ -0,0 +1,325 @@
+package io.github.raphaelmayer.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.raphaelmayer.models.DataInOut;
+import io.github.raphaelmayer.models.Ontology;
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.util.JsonUtils;
+
+/**
+ * Generates large ontologies with matching transformations for scale testing.
+ * The same configuration always yields the same workload.
+ *
+ * Every generated function changes exactly one attribute: a conversion changes
+ * the type, a translation the language and a reformatting the format. The types
+ * are split into layers and conversions only lead from one layer into the next,
+ * so a transformation from a type in the first layer into a type of layer k
+ * needs at least k conversions, plus one translation and one reformatting if
+ * the language or the format differ. For every transformation the generator
+ * plants functions that achieve exactly this bound, which makes it the known
+ * optimal path length. All other functions are random. The planted functions
+ * are available in the region of their transformation, so the planning
+ * constraints keep them; other functions may be ruled out by it.
+ *
+ * Usage: OntologyGenerator [config.json] [outputDirectory]
+ */
+public class OntologyGenerator {
+
+    private final GeneratorConfig config;
+    private final Random random;
+    private final int typesPerLayer;
+    private final List<ServiceFunction> functions = new ArrayList<>();
+    private final List<String> dataOutNames = new ArrayList<>();
+
+    public OntologyGenerator(GeneratorConfig config) {
+        if (config.getLayers() < 2 || config.getTypes() < config.getLayers()) {
+            throw new IllegalArgumentException("At least two layers and one type per layer are required");
+        }
+        if (config.getLanguages() < 1 || config.getFormats() < 1 || config.getBranchingFactor() < 1
+                || config.getProviders() < 1 || config.getRegions() < 1) {
+            throw new IllegalArgumentException("Cardinalities, branching factor and spreads must be positive");
+        }
+        this.config = config;
+        this.random = new Random(config.getSeed());
+        this.typesPerLayer = config.getTypes() / config.getLayers();
+    }
+
+    public static Workload generate(GeneratorConfig config) {
+        return new OntologyGenerator(config).generate();
+    }
+
+    private Workload generate() {
+        functions.add(analyse());
+
+        List<Transformation> transformations = new ArrayList<>();
+        List<Integer> optimalPathLengths = new ArrayList<>();
+        for (int i = 0; i < config.getTransformations(); i++) {
+            optimalPathLengths.add(plantTransformation(transformations));
+        }
+        if (functions.size() > config.getFunctions()) {
+            throw new IllegalArgumentException("The transformations need " + functions.size()
+                    + " functions, but only " + config.getFunctions() + " were requested");
+        }
+        while (functions.size() < config.getFunctions()) {
+            functions.add(randomFunction());
+        }
+
+        Ontology ontology = new Ontology();
+        ontology.functions = functions;
+        ontology.providers = new ArrayList<>();
+        return new Workload(ontology, transformations, optimalPathLengths);
+    }
+
+    /**
+     * Adds a transformation and the functions of one of its shortest paths.
+     *
+     * @return the length of the shortest path
+     */
+    private int plantTransformation(List<Transformation> transformations) {
+        int targetLayer = 1 + random.nextInt(config.getLayers() - 1);
+        String inputType = type(0, random.nextInt(typesPerLayer));
+        String targetType = type(targetLayer, random.nextInt(typesPerLayer));
+        String inputLanguage = language(random.nextInt(config.getLanguages()));
+        String targetLanguage = language(random.nextInt(config.getLanguages()));
+        String inputFormat = format(random.nextInt(config.getFormats()));
+        String targetFormat = format(random.nextInt(config.getFormats()));
+
+        int firstPlanted = functions.size();
+        // a chain of conversions through the layers that accepts any language and format
+        String current = inputType;
+        for (int layer = 1; layer <= targetLayer; layer++) {
+            String next = layer == targetLayer ? targetType : type(layer, random.nextInt(typesPerLayer));
+            ServiceFunction conversion = function("Conversion");
+            conversion.input.put("type", list(current));
+            conversion.output.put("type", list(next));
+            functions.add(conversion);
+            current = next;
+        }
+        int length = targetLayer;
+        if (!inputLanguage.equals(targetLanguage)) {
+            ServiceFunction translation = function("Translation");
+            translation.input.put("language", list(inputLanguage));
+            translation.output.put("language", list(targetLanguage));
+            wireLanguages(translation);
+            functions.add(translation);
+            length++;
+        }
+        if (!inputFormat.equals(targetFormat)) {
+            ServiceFunction reformatting = function("Reformatting");
+            reformatting.input.put("format", list(inputFormat));
+            reformatting.output.put("format", list(targetFormat));
+            functions.add(reformatting);
+            length++;
+        }
+
+        String region = region(random.nextInt(config.getRegions()));
+        for (ServiceFunction function : functions.subList(firstPlanted, functions.size())) {
+            if (!function.regions.isEmpty() && !function.regions.contains(region)) {
+                function.regions.set(0, region);
+            }
+        }
+
+        Transformation transformation = new Transformation();
+        transformation.input = new LinkedHashMap<>();
+        transformation.input.put("region", region);
+        transformation.input.put("bucket", "generated-bucket");
+        transformation.input.put("fileNames", list("file" + transformations.size()));
+        transformation.input.put("type", inputType);
+        transformation.input.put("language", inputLanguage);
+        transformation.input.put("format", inputFormat);
+        transformation.output = new LinkedHashMap<>();
+        transformation.output.put("type", targetType);
+        transformation.output.put("language", targetLanguage);
+        transformation.output.put("format", targetFormat);
+        transformations.add(transformation);
+        return length;
+    }
+
+    private ServiceFunction randomFunction() {
+        int kind = random.nextInt(3);
+        if (kind == 0) {
+            // conversions never skip a layer, which keeps the planted paths optimal
+            int layer = random.nextInt(config.getLayers() - 1);
+            ServiceFunction conversion = function("Conversion");
+            conversion.input.put("type", values(layer, typesPerLayer));
+            conversion.output.put("type", values(layer + 1, typesPerLayer));
+            if (random.nextBoolean()) {
+                conversion.input.put("language", languages());
+            }
+            return conversion;
+        }
+        ServiceFunction function = function(kind == 1 ? "Translation" : "Reformatting");
+        String key = kind == 1 ? "language" : "format";
+        function.input.put("type", values(random.nextInt(config.getLayers()), typesPerLayer));
+        function.input.put(key, kind == 1 ? languages() : formats());
+        function.output.put(key, kind == 1 ? languages() : formats());
+        if (kind == 1) {
+            wireLanguages(function);
+        }
+        return function;
+    }
+
+    /**
+     * Creates a function with the common data inputs and outputs. Optional
+     * inputs refer to the extra outputs of earlier functions, so the choreography
+     * generation resolves them whenever such a function is on the path.
+     */
+    private ServiceFunction function(String type) {
+        ServiceFunction function = new ServiceFunction();
+        function.name = type.toLowerCase() + functions.size();
+        function.type = type;
+        function.provider = "provider" + random.nextInt(config.getProviders());
+        function.description = "Generated " + type.toLowerCase() + " function";
+        function.config.memory = 512;
+        function.config.timeout = 60;
+        function.config.runtime = "nodejs20.x";
+        int firstRegion = random.nextInt(config.getRegions());
+        for (int i = 0; i < Math.min(config.getRegionsPerFunction(), config.getRegions()); i++) {
+            function.regions.add(region((firstRegion + i) % config.getRegions()));
+        }
+
+        function.dataIns.add(dataInOut("inputBucket", "string", true));
+        function.dataIns.add(dataInOut("fileNames", "collection", true));
+        for (int i = 0; i < config.getOptionalDataIns() && !dataOutNames.isEmpty(); i++) {
+            String name = dataOutNames.get(random.nextInt(dataOutNames.size()));
+            function.dataIns.add(dataInOut(name, "string", false));
+        }
+        function.dataOuts.add(dataInOut("fileNames", "collection", false));
+        for (int i = 0; i < config.getExtraDataOuts(); i++) {
+            String name = function.name + "Meta" + i;
+            function.dataOuts.add(dataInOut(name, "string", false));
+            dataOutNames.add(name);
+        }
+        return function;
+    }
+
+    private ServiceFunction analyse() {
+        ServiceFunction analyse = new ServiceFunction();
+        analyse.name = "analyse";
+        analyse.type = "Analyse";
+        analyse.provider = "core";
+        analyse.description = "Analyses the input files";
+        analyse.config.memory = 512;
+        analyse.config.timeout = 60;
+        analyse.config.runtime = "nodejs20.x";
+        analyse.dataIns.add(dataInOut("inputBucket", "string", true));
+        analyse.dataIns.add(dataInOut("inputFileName", "string", false));
+        analyse.dataOuts.add(dataInOut("fileNames", "collection", false));
+        analyse.dataOuts.add(dataInOut("fileCount", "number", false));
+        return analyse;
+    }
+
+    private static void wireLanguages(ServiceFunction translation) {
+        translation.dataIns.add(dataInOut("inputLanguage", "string", true));
+        translation.dataIns.add(dataInOut("outputLanguage", "string", true));
+    }
+
+    private static DataInOut dataInOut(String name, String type, boolean required) {
+        DataInOut dataInOut = new DataInOut();
+        dataInOut.name = name;
+        dataInOut.type = type;
+        dataInOut.required = required;
+        return dataInOut;
+    }
+
+    private List<Object> values(int layer, int count) {
+        List<Object> values = new ArrayList<>();
+        int size = 1 + random.nextInt(Math.min(config.getBranchingFactor(), count));
+        while (values.size() < size) {
+            String value = type(layer, random.nextInt(count));
+            if (!values.contains(value)) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private List<Object> languages() {
+        List<Object> values = new ArrayList<>();
+        int size = 1 + random.nextInt(Math.min(config.getBranchingFactor(), config.getLanguages()));
+        while (values.size() < size) {
+            String value = language(random.nextInt(config.getLanguages()));
+            if (!values.contains(value)) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private List<Object> formats() {
+        List<Object> values = new ArrayList<>();
+        int size = 1 + random.nextInt(Math.min(config.getBranchingFactor(), config.getFormats()));
+        while (values.size() < size) {
+            String value = format(random.nextInt(config.getFormats()));
+            if (!values.contains(value)) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    private static List<Object> list(Object value) {
+        return new ArrayList<>(Arrays.asList(value));
+    }
+
+    private static String type(int layer, int index) {
+        return "type" + layer + "_" + index;
+    }
+
+    private static String language(int index) {
+        return "lang" + index;
+    }
+
+    private static String format(int index) {
+        return "format" + index;
+    }
+
+    private static String region(int index) {
+        return "region-" + index;
+    }
+
+    /**
+     * Writes ontology.json, transformations.jsonl (one transformation per line,
+     * as read by the -batch mode) and expected.json with the optimal path
+     * lengths.
+     */
+    public static void main(String[] args) throws IOException {
+        GeneratorConfig config = args.length > 0 ? JsonUtils.parseFile(args[0], GeneratorConfig.class)
+                : new GeneratorConfig();
+        File directory = new File(args.length > 1 ? args[1] : "generated");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        Workload workload = generate(config);
+
+        JsonUtils.writeFile(JsonUtils.convertToJsonNode(workload.getOntology()),
+                new File(directory, "ontology.json").getPath());
+
+        ObjectMapper mapper = new ObjectMapper();
+        List<Map<String, Object>> expected = new ArrayList<>();
+        try (PrintWriter writer = new PrintWriter(new File(directory, "transformations.jsonl"), "UTF-8")) {
+            for (int i = 0; i < workload.getTransformations().size(); i++) {
+                Transformation transformation = workload.getTransformations().get(i);
+                writer.println(mapper.writeValueAsString(transformation));
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("line", i + 1);
+                entry.put("optimalPathLength", workload.getOptimalPathLengths().get(i));
+                expected.add(entry);
+            }
+        }
+        JsonUtils.writeFile(JsonUtils.convertToJsonNode(expected), new File(directory, "expected.json").getPath());
+    }
+}
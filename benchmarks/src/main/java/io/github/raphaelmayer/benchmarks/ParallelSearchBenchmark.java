@@ -0,0 +1,74 @@
+package io.github.raphaelmayer.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.PathfindingService;
+import io.github.raphaelmayer.services.pathfinding.CompiledOntology;
+import io.github.raphaelmayer.services.pathfinding.ParallelBreadthFirstSearch;
+import io.github.raphaelmayer.services.pathfinding.SearchStrategies;
+import io.github.raphaelmayer.util.Constants;
+
+/**
+ * Measures how the parallel BFS scales with the number of threads on a large
+ * generated ontology. Compare the results with the bfs run of
+ * {@link SyntheticOntologyBenchmark} for the same number of functions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelSearchBenchmark {
+
+    @Param({ "10000" })
+    public int functions;
+
+    @Param({ "1", "4", "16", "64" })
+    public int parallelism;
+
+    private PathfindingService pfs;
+    private List<Transformation> transformations;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GeneratorConfig config = new GeneratorConfig();
+        config.setFunctions(functions);
+        Workload workload = OntologyGenerator.generate(config);
+        CompiledOntology ontology = CompiledOntology.compile(workload.getOntology());
+        pfs = new PathfindingService(ontology, SearchStrategies.fromName(ParallelBreadthFirstSearch.NAME,
+                Constants.DEFAULT_NODE_BUDGET, Constants.DEFAULT_BEAM_WIDTH, parallelism));
+        transformations = workload.getTransformations();
+        BenchmarkResources.silenceStdout();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkResources.restoreStdout();
+    }
+
+    @Benchmark
+    public List<ServiceFunction> findServicePath() {
+        Transformation transformation = transformations.get(next);
+        next = (next + 1) % transformations.size();
+        return pfs.findServicePath(transformation);
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.raphaelmayer.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.PathfindingService;
+import io.github.raphaelmayer.services.pathfinding.CompiledOntology;
+import io.github.raphaelmayer.services.pathfinding.PlanningConstraints;
+import io.github.raphaelmayer.services.pathfinding.SearchProblem;
+import io.github.raphaelmayer.services.pathfinding.SearchResult;
+import io.github.raphaelmayer.services.pathfinding.SearchStrategies;
+import io.github.raphaelmayer.services.pathfinding.SearchStrategy;
+
+/**
+ * Measures the search of {@link PathfindingService#findServicePath(Transformation)}
+ * over the bundled ontology and sample input files: every invocation builds the
+ * search problem and runs a full search, as the service does without its path
+ * cache.
+ *
+ * With {@code branchOnOutputs=false} functions write a single output value, as
+ * before the search branched over them. The {@code nodesExpanded} and
+ * {@code successorsGenerated} counters report the work of one search in either
+ * mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathfindingBenchmark {
+
+    @Param({ "input.json", "input2.json" })
+    public String inputFile;
+
+    @Param({ "bfs", "astar", "bidirectional" })
+    public String strategy;
+
+    @Param({ "true", "false" })
+    public boolean branchOnOutputs;
+
+    private CompiledOntology ontology;
+    private SearchStrategy searchStrategy;
+    private Transformation transformation;
+
+    /**
+     * The counters of the last search. Searches are deterministic, so they are
+     * the same for every invocation.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SearchCounters {
+        public long nodesExpanded;
+        public long successorsGenerated;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ontology = CompiledOntology.compile(BenchmarkResources.loadOntology());
+        searchStrategy = SearchStrategies.fromName(strategy);
+        transformation = BenchmarkResources.loadTransformation(inputFile);
+        BenchmarkResources.silenceStdout();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkResources.restoreStdout();
+    }
+
+    @Benchmark
+    public SearchResult findServicePath(SearchCounters counters) {
+        SearchProblem problem = new SearchProblem(ontology, transformation.input, transformation.output,
+                branchOnOutputs, PlanningConstraints.fromInput(ontology, transformation.input));
+        SearchResult result = searchStrategy.search(problem);
+        counters.nodesExpanded = result.getStats().getNodesExpanded();
+        counters.successorsGenerated = result.getStats().getSuccessorsGenerated();
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.raphaelmayer.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.PathfindingService;
+import io.github.raphaelmayer.services.pathfinding.CompiledOntology;
+import io.github.raphaelmayer.services.pathfinding.SearchStrategies;
+
+/**
+ * Measures {@link PathfindingService#findServicePath(Transformation)} over
+ * generated ontologies of growing size, to see how the search scales with the
+ * number of functions. Every invocation plans the next of the generated
+ * transformations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyntheticOntologyBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int functions;
+
+    @Param({ "bfs", "astar", "bidirectional" })
+    public String strategy;
+
+    private PathfindingService pfs;
+    private List<Transformation> transformations;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GeneratorConfig config = new GeneratorConfig();
+        config.setFunctions(functions);
+        Workload workload = OntologyGenerator.generate(config);
+        CompiledOntology ontology = CompiledOntology.compile(workload.getOntology());
+        pfs = new PathfindingService(ontology, SearchStrategies.fromName(strategy));
+        transformations = workload.getTransformations();
+        BenchmarkResources.silenceStdout();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkResources.restoreStdout();
+    }
+
+    @Benchmark
+    public List<ServiceFunction> findServicePath() {
+        Transformation transformation = transformations.get(next);
+        next = (next + 1) % transformations.size();
+        return pfs.findServicePath(transformation);
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.raphaelmayer.benchmarks;
+
+import java.util.List;
+
+import io.github.raphaelmayer.models.Ontology;
+import io.github.raphaelmayer.models.Transformation;
+
+/**
+ * A generated ontology with transformations whose shortest service path length
+ * is known. The lengths count the searched functions only, without the
+ * 'analyse' function the planner puts in front of every path.
+ */
+public class Workload {
+
+    private final Ontology ontology;
+    private final List<Transformation> transformations;
+    private final List<Integer> optimalPathLengths;
+
+    public Workload(Ontology ontology, List<Transformation> transformations, List<Integer> optimalPathLengths) {
+        this.ontology = ontology;
+        this.transformations = transformations;
+        this.optimalPathLengths = optimalPathLengths;
+    }
+
+    public Ontology getOntology() {
+        return ontology;
+    }
+
+    public List<Transformation> getTransformations() {
+        return transformations;
+    }
+
+    public List<Integer> getOptimalPathLengths() {
+        return optimalPathLengths;
+    }
+}
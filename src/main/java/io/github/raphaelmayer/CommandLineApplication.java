@@ -3,8 +3,10 @@ package io.github.raphaelmayer;
 import org.apache.commons.cli.*;
 
 import io.github.raphaelmayer.models.AppConfig;
+import io.github.raphaelmayer.services.BatchOrchestrator;
 import io.github.raphaelmayer.services.CompositeBaaSOrchestrator;
 import io.github.raphaelmayer.services.DeploymentService;
+import io.github.raphaelmayer.services.pathfinding.SearchStrategies;
 import io.github.raphaelmayer.util.Utils;
 
 public class CommandLineApplication {
@@ -44,16 +46,25 @@ public class CommandLineApplication {
     }
 
     private void handleCommand(CommandLine cmd) {
-        AppConfig appConfig = new AppConfig(cmd);
+        AppConfig appConfig;
+        try {
+            appConfig = new AppConfig(cmd);
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid number: " + e.getMessage());
+            displayHelp();
+            return;
+        }
 
         if (cmd.hasOption("reset")) {
             resetEnvironment(cmd.getOptionValue("reset"));
         } else if (cmd.hasOption("zip")) {
             zipFunctions();
+        } else if (cmd.hasOption("batch")) {
+            executeBatch(appConfig);
         } else if (cmd.hasOption("f") && cmd.hasOption("n")) {
             executeOrchestrator(appConfig);
         } else {
-            System.err.println("Error: The 'f' and 'n' options are required unless using 'reset' or 'zip'.");
+            System.err.println("Error: The 'f' and 'n' options are required unless using 'reset', 'zip' or 'batch'.");
             displayHelp();
         }
     }
@@ -68,7 +79,51 @@ public class CommandLineApplication {
     }
 
     private void executeOrchestrator(AppConfig appConfig) {
-        new CompositeBaaSOrchestrator(appConfig).run();
+        if (validateSearchStrategy(appConfig)) {
+            CompositeBaaSOrchestrator orchestrator;
+            try {
+                orchestrator = new CompositeBaaSOrchestrator(appConfig);
+            } catch (IllegalArgumentException e) {
+                // e.g. an ontology whose attributes do not fit into an encoded search state
+                System.err.println("Error: " + e.getMessage());
+                return;
+            }
+            orchestrator.run();
+        }
+    }
+
+    private void executeBatch(AppConfig appConfig) {
+        if (validateSearchStrategy(appConfig)) {
+            BatchOrchestrator orchestrator;
+            try {
+                orchestrator = new BatchOrchestrator(appConfig);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error: " + e.getMessage());
+                return;
+            }
+            orchestrator.run();
+        }
+    }
+
+    private boolean validateSearchStrategy(AppConfig appConfig) {
+        if (appConfig.getNodeBudget() < 1 || appConfig.getBeamWidth() < 1) {
+            System.err.println("Error: The node budget and the beam width must be at least 1.");
+            displayHelp();
+            return false;
+        }
+        if (appConfig.getThreads() < 1) {
+            System.err.println("Error: The number of threads must be at least 1.");
+            displayHelp();
+            return false;
+        }
+        try {
+            SearchStrategies.fromName(appConfig.getSearchStrategy());
+            return true;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            displayHelp();
+            return false;
+        }
     }
 
     private Options buildOptions() {
@@ -79,7 +134,15 @@ public class CommandLineApplication {
                 .addOption("reset", true, "Reset the cloud environment without running the workflow generation.")
                 .addOption("zip", false, "Zip all JavaScript (.js) files in the functions directory.")
                 .addOption("deploy", false, "Run the workflow generation and deploy all required resources.")
-                .addOption("debug", false, "Run the workflow generation in debug mode with additional logging.");
+                .addOption("reconcile", false, "Deploy by applying only the changes since the last deployment instead of resetting the environment.")
+                .addOption("debug", false, "Run the workflow generation in debug mode with additional logging.")
+                .addOption("stats", false, "Write the path finding statistics to <workflowName>-stats.json.")
+                .addOption("search", true, "Select the search strategy: " + String.join(", ", SearchStrategies.NAMES) + ".")
+                .addOption("nocache", false, "Always search for the service path instead of using the path cache and macro-operators.")
+                .addOption("batch", true, "Plan service paths for a directory of input files or a JSON Lines file.")
+                .addOption("threads", true, "Number of threads used for batch planning and the parallel-bfs strategy.")
+                .addOption("budget", true, "Number of nodes the beam, idastar and pareto strategies may visit.")
+                .addOption("beamwidth", true, "Number of states per level kept by the beam strategy.");
     }
 
     private void displayHelp() {
@@ -90,13 +153,24 @@ public class CommandLineApplication {
                 "  -n, --name <arg>   Specify the name of the workflow (Required).\n" +
                 "  -zip               Zip all functions located in the functions directory.\n" +
                 "  -reset <arg>       Reset the region specified in arg to the initial state.\n" +
+                "  -batch <arg>       Plan service paths for every input in a directory or JSON Lines file.\n" +
                 "  -h, --help         Display this help message.\n\n" +
                 "Flags (for use with -f):\n" +
                 "  -deploy           Run with deploying all required resources.\n" +
-                "  -debug            Enable debug mode for detailed output.\n";
+                "  -reconcile        Deploy, but only create, update and delete what changed since the last\n" +
+                "                    deployment instead of resetting the environment first.\n" +
+                "  -debug            Enable debug mode for detailed output (e.g. every search step).\n" +
+                "  -stats            Write the path finding statistics to <workflowName>-stats.json.\n" +
+                "  -search <arg>     Search strategy used for path finding: bfs (default), astar, bidirectional,\n" +
+                "                    beam, idastar, parallel-bfs, fastest, cheapest, pareto, macro.\n" +
+                "  -budget <arg>     Node budget of the beam, idastar and pareto strategies (default: 100000).\n" +
+                "  -beamwidth <arg>  States per level kept by the beam strategy (default: 64).\n" +
+                "  -nocache          Do not read or write cached service paths and learned macro-operators.\n" +
+                "  -threads <arg>    Number of threads for -batch and parallel-bfs (default: number of cores).\n";
 
         String usage = "Usage:\n" +
-                "  java -jar compositebaas.jar -f <input.json> -n <workflowName> [--deploy] [--debug]\n" +
+                "  java -jar compositebaas.jar -f <input.json> -n <workflowName> [--deploy | --reconcile] [--debug] [--stats] [--search <strategy>] [--budget <n>] [--beamwidth <n>] [--threads <n>] [--nocache]\n" +
+                "  java -jar compositebaas.jar --batch <dir|inputs.jsonl> [-n <name>] [--threads <n>]\n" +
                 "  java -jar compositebaas.jar --zip\n" +
                 "  java -jar compositebaas.jar --reset <region>\n" +
                 "  java -jar compositebaas.jar -h | --help";
@@ -106,6 +180,10 @@ public class CommandLineApplication {
                 "      Generate workflow without deploying resources.\n" +
                 "  java -jar compositebaas.jar -f input.json -n workflowName -deploy -debug\n" +
                 "      Generate workflow in debug mode including deployment.\n" +
+                "  java -jar compositebaas.jar -f input.json -n workflowName -reconcile\n" +
+                "      Generate workflow and update the deployment of the previous run in place.\n" +
+                "  java -jar compositebaas.jar -batch inputs.jsonl -threads 8\n" +
+                "      Plan service paths for all inputs and write them to batch-paths.json.\n" +
                 "  java -jar compositebaas.jar -zip\n" +
                 "      Zip all functions in the functions directory.\n" +
                 "  java -jar compositebaas.jar -reset 'us-east-1' \n" +
@@ -2,19 +2,40 @@ package io.github.raphaelmayer.models;
 
 import org.apache.commons.cli.CommandLine;
 
+import io.github.raphaelmayer.util.Constants;
+
 public class AppConfig {
 
     private String inputFilePath;
     private String workflowName;
     private boolean deploy;
+    private boolean reconcile;
     private boolean debug;
+    private boolean stats;
+    private String searchStrategy;
+    private boolean pathCache;
+    private String batchSource;
+    private int threads;
+    private int nodeBudget;
+    private int beamWidth;
     // private String region;
 
     public AppConfig(CommandLine cmd) {
         this.setInputFilePath(cmd.getOptionValue("f"));
         this.setWorkflowName(cmd.getOptionValue("n"));
-        this.setDeploy(cmd.hasOption("deploy"));
+        this.setDeploy(cmd.hasOption("deploy") || cmd.hasOption("reconcile"));
+        this.setReconcile(cmd.hasOption("reconcile"));
         this.setDebug(cmd.hasOption("debug"));
+        this.setStats(cmd.hasOption("stats"));
+        this.setSearchStrategy(cmd.getOptionValue("search"));
+        this.setPathCache(!cmd.hasOption("nocache"));
+        this.setBatchSource(cmd.getOptionValue("batch"));
+        this.setThreads(cmd.hasOption("threads") ? Integer.parseInt(cmd.getOptionValue("threads"))
+                : Runtime.getRuntime().availableProcessors());
+        this.setNodeBudget(cmd.hasOption("budget") ? Integer.parseInt(cmd.getOptionValue("budget"))
+                : Constants.DEFAULT_NODE_BUDGET);
+        this.setBeamWidth(cmd.hasOption("beamwidth") ? Integer.parseInt(cmd.getOptionValue("beamwidth"))
+                : Constants.DEFAULT_BEAM_WIDTH);
         // this.setRegion(cmd.getOptionValue("deploy"));
     }
 
@@ -42,6 +63,14 @@ public class AppConfig {
         this.deploy = deploy;
     }
 
+    public boolean isReconcile() {
+        return reconcile;
+    }
+
+    public void setReconcile(boolean reconcile) {
+        this.reconcile = reconcile;
+    }
+
     public boolean isDebug() {
         return debug;
     }
@@ -50,6 +79,62 @@ public class AppConfig {
         this.debug = debug;
     }
 
+    public boolean isStats() {
+        return stats;
+    }
+
+    public void setStats(boolean stats) {
+        this.stats = stats;
+    }
+
+    public String getSearchStrategy() {
+        return searchStrategy;
+    }
+
+    public void setSearchStrategy(String searchStrategy) {
+        this.searchStrategy = searchStrategy;
+    }
+
+    public boolean isPathCache() {
+        return pathCache;
+    }
+
+    public void setPathCache(boolean pathCache) {
+        this.pathCache = pathCache;
+    }
+
+    public String getBatchSource() {
+        return batchSource;
+    }
+
+    public void setBatchSource(String batchSource) {
+        this.batchSource = batchSource;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getNodeBudget() {
+        return nodeBudget;
+    }
+
+    public void setNodeBudget(int nodeBudget) {
+        this.nodeBudget = nodeBudget;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    public void setBeamWidth(int beamWidth) {
+        this.beamWidth = beamWidth;
+    }
+
     // public String getRegion() {
     //     return region;
     // }
@@ -0,0 +1,55 @@
+package io.github.raphaelmayer.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * A single edit of the ontology of a running planner: a function is added,
+ * removed, or replaced by a new version with the same name.
+ */
+@JsonInclude(Include.NON_NULL)
+public class OntologyChange {
+
+    public enum Kind {
+        ADDED, REMOVED, MODIFIED
+    }
+
+    public Kind kind;
+    // the added function or the new version of a modified one
+    public ServiceFunction function;
+    // the name of a removed function
+    public String name;
+
+    public static OntologyChange added(ServiceFunction function) {
+        OntologyChange change = new OntologyChange();
+        change.kind = Kind.ADDED;
+        change.function = function;
+        return change;
+    }
+
+    public static OntologyChange removed(String name) {
+        OntologyChange change = new OntologyChange();
+        change.kind = Kind.REMOVED;
+        change.name = name;
+        return change;
+    }
+
+    public static OntologyChange modified(ServiceFunction function) {
+        OntologyChange change = new OntologyChange();
+        change.kind = Kind.MODIFIED;
+        change.function = function;
+        return change;
+    }
+
+    /**
+     * @return the name of the function the change is about
+     */
+    public String functionName() {
+        return function != null ? function.name : name;
+    }
+
+    @Override
+    public String toString() {
+        return "OntologyChange{" + kind + " " + functionName() + '}';
+    }
+}
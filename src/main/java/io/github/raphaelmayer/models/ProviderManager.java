@@ -6,5 +6,7 @@ public interface ProviderManager {
 
     public List<String> setupEnvironment(List<ServiceFunction> servicePaths);
 
+    public List<String> reconcileEnvironment(List<ServiceFunction> servicePath);
+
     public void resetEnvironment();
 }
@@ -5,6 +5,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 import io.github.raphaelmayer.util.Utils;
 
 public class ServiceFunction {
@@ -44,6 +47,13 @@ public class ServiceFunction {
     public List<DataInOut> dataOuts;
     public List<String> dependencies;
     public FunctionConfig config;
+    // Optional cost annotations used by the weighted planners: the expected
+    // processing time in seconds and the expected price in USD per invocation.
+    // Left out when unset, so the content hash of unannotated ontologies is unchanged
+    @JsonInclude(Include.NON_NULL)
+    public Double latency;
+    @JsonInclude(Include.NON_NULL)
+    public Double price;
 
     @Override
     public String toString() {
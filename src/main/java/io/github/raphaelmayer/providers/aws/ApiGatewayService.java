@@ -1,43 +1,54 @@
 package io.github.raphaelmayer.providers.aws;
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.apigateway.ApiGatewayAsyncClient;
 import software.amazon.awssdk.services.apigateway.ApiGatewayClient;
 import software.amazon.awssdk.services.apigateway.model.ApiGatewayException;
+import software.amazon.awssdk.services.apigateway.model.ConflictException;
 import software.amazon.awssdk.services.apigateway.model.CreateDeploymentRequest;
 import software.amazon.awssdk.services.apigateway.model.CreateResourceRequest;
 import software.amazon.awssdk.services.apigateway.model.CreateResourceResponse;
 import software.amazon.awssdk.services.apigateway.model.CreateRestApiRequest;
 import software.amazon.awssdk.services.apigateway.model.CreateRestApiResponse;
-import software.amazon.awssdk.services.apigateway.model.DeleteDeploymentRequest;
-import software.amazon.awssdk.services.apigateway.model.DeleteMethodRequest;
 import software.amazon.awssdk.services.apigateway.model.DeleteRestApiRequest;
-import software.amazon.awssdk.services.apigateway.model.DeleteStageRequest;
-import software.amazon.awssdk.services.apigateway.model.Deployment;
-import software.amazon.awssdk.services.apigateway.model.GetDeploymentsRequest;
-import software.amazon.awssdk.services.apigateway.model.GetDeploymentsResponse;
-import software.amazon.awssdk.services.apigateway.model.GetResourceRequest;
-import software.amazon.awssdk.services.apigateway.model.GetResourceResponse;
 import software.amazon.awssdk.services.apigateway.model.GetResourcesRequest;
 import software.amazon.awssdk.services.apigateway.model.GetResourcesResponse;
-import software.amazon.awssdk.services.apigateway.model.GetRestApisResponse;
-import software.amazon.awssdk.services.apigateway.model.GetStagesRequest;
-import software.amazon.awssdk.services.apigateway.model.GetStagesResponse;
+import software.amazon.awssdk.services.apigateway.model.GetRestApisRequest;
+import software.amazon.awssdk.services.apigateway.model.ImportRestApiRequest;
+import software.amazon.awssdk.services.apigateway.model.ImportRestApiResponse;
 import software.amazon.awssdk.services.apigateway.model.IntegrationType;
+import software.amazon.awssdk.services.apigateway.model.NotFoundException;
 import software.amazon.awssdk.services.apigateway.model.PutIntegrationRequest;
 import software.amazon.awssdk.services.apigateway.model.PutMethodRequest;
+import software.amazon.awssdk.services.apigateway.model.PutMode;
+import software.amazon.awssdk.services.apigateway.model.PutRestApiRequest;
 import software.amazon.awssdk.services.apigateway.model.Resource;
 import software.amazon.awssdk.services.apigateway.model.RestApi;
-import software.amazon.awssdk.services.apigateway.model.Stage;
 
 public class ApiGatewayService {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String API_DESCRIPTION = "API Gateway to expose multiple Lambda functions";
+
     private final ApiGatewayClient apiGatewayClient;
+    private final ApiGatewayAsyncClient apiGatewayAsyncClient;
     private final String region;
 
-    public ApiGatewayService(ApiGatewayClient apiGatewayClient, String region) {
+    public ApiGatewayService(ApiGatewayClient apiGatewayClient, ApiGatewayAsyncClient apiGatewayAsyncClient,
+            String region) {
         this.apiGatewayClient = apiGatewayClient;
+        this.apiGatewayAsyncClient = apiGatewayAsyncClient;
         this.region = region;
     }
 
@@ -51,7 +62,7 @@ public class ApiGatewayService {
         try {
             CreateRestApiResponse response = apiGatewayClient.createRestApi(CreateRestApiRequest.builder()
                     .name(apiName)
-                    .description("API Gateway to expose multiple Lambda functions")
+                    .description(API_DESCRIPTION)
                     .build());
             return response.id();
         } catch (ApiGatewayException e) {
@@ -78,6 +89,16 @@ public class ApiGatewayService {
         }
     }
 
+    /**
+     * Like {@link #deployApi(String, String)}, but with the async client.
+     */
+    public CompletableFuture<Void> deployApiAsync(String apiId, String stageName) {
+        return withConflictRetries(() -> apiGatewayAsyncClient.createDeployment(CreateDeploymentRequest.builder()
+                .restApiId(apiId)
+                .stageName(stageName)
+                .build())).thenApply(response -> null);
+    }
+
     public String getRootResourceId(String apiId) {
         GetResourcesResponse resourcesResponse = apiGatewayClient
                 .getResources(GetResourcesRequest.builder().restApiId(apiId).build());
@@ -110,120 +131,139 @@ public class ApiGatewayService {
                 .httpMethod(httpMethod)
                 .type(IntegrationType.AWS_PROXY)
                 .integrationHttpMethod("POST")
-                .uri("arn:aws:apigateway:" + this.region + ":lambda:path/2015-03-31/functions/" + lambdaArn
-                        + "/invocations")
+                .uri(lambdaIntegrationUri(lambdaArn))
                 .build());
     }
 
+    private String lambdaIntegrationUri(String lambdaArn) {
+        return "arn:aws:apigateway:" + this.region + ":lambda:path/2015-03-31/functions/" + lambdaArn
+                + "/invocations";
+    }
+
     /**
-     * Deletes the specified API Gateway and all associated resources.
-     * 
-     * @param apiId The API ID of the Gateway to delete
+     * Creates an API Gateway with all of its resources, methods and Lambda
+     * integrations in a single call, by importing an OpenAPI definition.
+     *
+     * @param apiName    The name of the API
+     * @param lambdaArns The ARNs of the Lambda functions to expose, by resource
+     *                   path (e.g., functionname)
+     * @param httpMethod HTTP method of every resource (e.g., POST)
+     * @return the API ID
      */
-    public void deleteApiGateway(String apiId) {
-        try {
-            // Get all the resources associated with the API
-            List<Resource> resources = getAllApiResources(apiId);
-
-            // For each resource, delete the methods
-            for (Resource resource : resources) {
-                deleteMethodsForResource(apiId, resource.id());
-            }
-
-            // Delete all stages associated with the API
-            deleteApiStages(apiId);
+    public CompletableFuture<String> importApiAsync(String apiName, Map<String, String> lambdaArns,
+            String httpMethod) {
+        SdkBytes definition = SdkBytes.fromByteArray(openApiDefinition(apiName, lambdaArns, httpMethod));
+        return withConflictRetries(() -> apiGatewayAsyncClient.importRestApi(ImportRestApiRequest.builder()
+                .body(definition)
+                .build())).thenApply(ImportRestApiResponse::id);
+    }
 
-            // Delete deployments
-            deleteApiDeployments(apiId);
+    /**
+     * Replaces the resources, methods and Lambda integrations of an API with
+     * the given ones in a single call, by importing an OpenAPI definition.
+     * Resources that are not in the definition are deleted.
+     *
+     * @see #importApiAsync(String, Map, String)
+     */
+    public CompletableFuture<Void> putApiDefinitionAsync(String apiId, String apiName, Map<String, String> lambdaArns,
+            String httpMethod) {
+        SdkBytes definition = SdkBytes.fromByteArray(openApiDefinition(apiName, lambdaArns, httpMethod));
+        return withConflictRetries(() -> apiGatewayAsyncClient.putRestApi(PutRestApiRequest.builder()
+                .restApiId(apiId)
+                .mode(PutMode.OVERWRITE)
+                .body(definition)
+                .build())).thenApply(response -> null);
+    }
 
-            // Finally, delete the API Gateway itself
-            apiGatewayClient.deleteRestApi(DeleteRestApiRequest.builder()
-                    .restApiId(apiId)
-                    .build());
-        } catch (ApiGatewayException e) {
-            System.err.println("Failed to delete API Gateway: " + e.awsErrorDetails().errorMessage());
-            throw e;
+    /**
+     * Renders an OpenAPI definition with a resource below the root for every
+     * function, whose method invokes the function through a Lambda proxy
+     * integration.
+     */
+    private byte[] openApiDefinition(String apiName, Map<String, String> lambdaArns, String httpMethod) {
+        ObjectNode definition = MAPPER.createObjectNode();
+        definition.put("openapi", "3.0.1");
+        definition.putObject("info")
+                .put("title", apiName)
+                .put("description", API_DESCRIPTION)
+                .put("version", "1.0");
+        ObjectNode paths = definition.putObject("paths");
+        lambdaArns.forEach((resourcePath, lambdaArn) -> {
+            ObjectNode method = paths.putObject("/" + resourcePath).putObject(httpMethod.toLowerCase(Locale.ROOT));
+            method.putObject("responses");
+            method.putObject("x-amazon-apigateway-integration")
+                    .put("type", "aws_proxy")
+                    .put("httpMethod", "POST")
+                    .put("uri", lambdaIntegrationUri(lambdaArn))
+                    .put("passthroughBehavior", "when_no_match");
+        });
+        try {
+            return MAPPER.writeValueAsBytes(definition);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not render the OpenAPI definition: " + e.getMessage(), e);
         }
     }
 
     /**
-     * Get all resources of the specified API Gateway.
-     * 
+     * Looks up every resource of the API together with its methods and their
+     * integrations, in a single paginated call.
+     *
      * @param apiId The API ID of the Gateway
-     * @return List of resources
+     * @return the resources, or null if the API does not exist
      */
-    private List<Resource> getAllApiResources(String apiId) {
-        GetResourcesResponse resourcesResponse = apiGatewayClient.getResources(
-                GetResourcesRequest.builder().restApiId(apiId).build());
-
-        return resourcesResponse.items();
+    public List<Resource> getApiResources(String apiId) {
+        try {
+            return apiGatewayClient.getResourcesPaginator(GetResourcesRequest.builder()
+                    .restApiId(apiId)
+                    .embed("methods")
+                    .limit(500)
+                    .build())
+                    .items().stream().collect(Collectors.toList());
+        } catch (NotFoundException e) {
+            return null;
+        }
     }
 
     /**
-     * Deletes all methods (GET, POST, etc.) associated with a resource.
-     * 
-     * @param apiId      The API ID of the Gateway
-     * @param resourceId The ID of the resource to clean up
+     * Repeats a call that failed, because another change of the same API was in
+     * progress or the account was throttled. The SDK does not retry conflicts.
      */
-    private void deleteMethodsForResource(String apiId, String resourceId) {
-        GetResourceResponse resource = apiGatewayClient.getResource(
-                GetResourceRequest.builder().restApiId(apiId).resourceId(resourceId).build());
-
-        // Iterate through all HTTP methods (GET, POST, etc.) and delete them
-        for (String httpMethod : resource.resourceMethods().keySet()) {
-            apiGatewayClient.deleteMethod(DeleteMethodRequest.builder()
-                    .restApiId(apiId)
-                    .resourceId(resourceId)
-                    .httpMethod(httpMethod)
-                    .build());
-        }
+    private static <T> CompletableFuture<T> withConflictRetries(Supplier<CompletableFuture<T>> call) {
+        return AwsRetries.withRetries(call,
+                failure -> failure instanceof ConflictException || AwsRetries.isThrottling(failure));
     }
 
     /**
-     * Delete all stages associated with the API Gateway.
+     * Deletes the specified API Gateway and all associated resources.
      * 
-     * @param apiId The API ID of the Gateway
+     * @param apiId The API ID of the Gateway to delete
      */
-    private void deleteApiStages(String apiId) {
+    public void deleteApiGateway(String apiId) {
+        // Deleting the REST API removes its resources, methods, stages and deployments as well
         try {
-            GetStagesResponse stagesResponse = apiGatewayClient.getStages(GetStagesRequest.builder()
+            apiGatewayClient.deleteRestApi(DeleteRestApiRequest.builder()
                     .restApiId(apiId)
                     .build());
-
-            for (Stage stage : stagesResponse.item()) {
-                apiGatewayClient.deleteStage(DeleteStageRequest.builder()
-                        .restApiId(apiId)
-                        .stageName(stage.stageName())
-                        .build());
-            }
-
         } catch (ApiGatewayException e) {
-            System.err.println("Failed to delete stages for API Gateway: " + e.awsErrorDetails().errorMessage());
+            System.err.println("Failed to delete API Gateway: " + e.awsErrorDetails().errorMessage());
             throw e;
         }
     }
 
     /**
-     * Deletes all deployments of the specified API Gateway.
-     * 
-     * @param apiId The API ID of the Gateway
+     * Like {@link #deleteApiGateway(String)}, but with the async client. API
+     * Gateway allows very few deletions per minute, so throttled deletions are
+     * retried.
      */
-    private void deleteApiDeployments(String apiId) {
-        GetDeploymentsResponse deploymentsResponse = apiGatewayClient.getDeployments(
-                GetDeploymentsRequest.builder().restApiId(apiId).build());
-
-        // Iterate through all deployments and delete them
-        for (Deployment deployment : deploymentsResponse.items()) {
-            apiGatewayClient.deleteDeployment(DeleteDeploymentRequest.builder()
-                    .restApiId(apiId)
-                    .deploymentId(deployment.id())
-                    .build());
-        }
+    public CompletableFuture<Void> deleteApiGatewayAsync(String apiId) {
+        return AwsRetries.withThrottlingRetries(() -> apiGatewayAsyncClient.deleteRestApi(DeleteRestApiRequest.builder()
+                .restApiId(apiId)
+                .build())).thenApply(response -> null);
     }
 
     public List<String> listApiGatewaysByName(String apiName) {
-        GetRestApisResponse response = apiGatewayClient.getRestApis();
-        return response.items().stream()
+        // the paginator follows the next pages, a single call returns at most 25 APIs
+        return apiGatewayClient.getRestApisPaginator(GetRestApisRequest.builder().build()).items().stream()
                 .filter(api -> api.name().equals(apiName))
                 .map(RestApi::id)
                 .collect(Collectors.toList());
@@ -1,26 +1,54 @@
 package io.github.raphaelmayer.providers.aws;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import javax.management.RuntimeErrorException;
 
 import io.github.raphaelmayer.models.ProviderManager;
 import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.providers.aws.DeploymentManifest.DeployedFunction;
+import io.github.raphaelmayer.providers.aws.LambdaService.FunctionZip;
+import io.github.raphaelmayer.providers.aws.LambdaService.LambdaDeployment;
 import io.github.raphaelmayer.util.Constants;
+import io.github.raphaelmayer.util.TaskGraph;
+import io.github.raphaelmayer.util.TaskGraph.Task;
 import io.github.raphaelmayer.util.Utils;
 import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.apigateway.ApiGatewayAsyncClient;
 import software.amazon.awssdk.services.apigateway.ApiGatewayClient;
+import software.amazon.awssdk.services.apigateway.model.Integration;
+import software.amazon.awssdk.services.apigateway.model.Method;
+import software.amazon.awssdk.services.apigateway.model.Resource;
+import software.amazon.awssdk.services.iam.IamAsyncClient;
 import software.amazon.awssdk.services.iam.IamClient;
+import software.amazon.awssdk.services.lambda.LambdaAsyncClient;
 import software.amazon.awssdk.services.lambda.LambdaClient;
 import software.amazon.awssdk.services.sts.StsClient;
 
 public class AwsManager implements ProviderManager {
 
+    private static final String HTTP_METHOD = "POST";
+
     private final Region region;
     private final List<String> lambdaPolicies = List.of(
             "arn:aws:iam::aws:policy/AmazonS3FullAccess",
@@ -49,6 +77,10 @@ public class AwsManager implements ProviderManager {
                 .credentialsProvider(credentialsProvider)
                 .region(Region.AWS_GLOBAL)
                 .build();
+        IamAsyncClient iamAsyncClient = IamAsyncClient.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(Region.AWS_GLOBAL)
+                .build();
         LambdaClient lambdaClient = LambdaClient.builder()
                 .credentialsProvider(credentialsProvider)
                 .region(this.region)
@@ -57,91 +89,386 @@ public class AwsManager implements ProviderManager {
                 .credentialsProvider(credentialsProvider)
                 .region(this.region)
                 .build();
+        LambdaAsyncClient lambdaAsyncClient = LambdaAsyncClient.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(this.region)
+                .build();
+        ApiGatewayAsyncClient apiGatewayAsyncClient = ApiGatewayAsyncClient.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(this.region)
+                .build();
 
         this.sts = new StsService(stsClient);
         String accountId = this.sts.getAccountId();
-        this.iam = new IamService(iamClient, lambdaPolicies);
-        this.lambda = new LambdaService(lambdaClient, this.region.toString(), accountId);
-        this.apiGateway = new ApiGatewayService(apiGatewayClient, this.region.toString());
+        this.iam = new IamService(iamClient, iamAsyncClient, lambdaPolicies);
+        this.lambda = new LambdaService(lambdaClient, lambdaAsyncClient, this.region.toString(), accountId);
+        this.apiGateway = new ApiGatewayService(apiGatewayClient, apiGatewayAsyncClient, this.region.toString());
     }
 
     @Override
     public List<String> setupEnvironment(List<ServiceFunction> servicePath) {
+        // The environment was reset, so the role, the API and its resources are created
+        return deploy(servicePath, new Environment());
+    }
+
+    /**
+     * Deploys the service path without resetting the environment first:
+     * <ol>
+     * <li>The desired state comes from the service path, the actual state from
+     * the deployment manifest, verified with a few describe calls.</li>
+     * <li>The difference of both tells what to create, update and delete.</li>
+     * <li>Only these changes are applied, and the result is written back to the
+     * manifest.</li>
+     * </ol>
+     * Without a manifest, e.g. on the first run, the resources are discovered by
+     * their names instead.
+     */
+    @Override
+    public List<String> reconcileEnvironment(List<ServiceFunction> servicePath) {
+        Environment actual = discover(servicePath, DeploymentManifest.load(manifestPath()));
+        System.out.println(actual.describeChanges(servicePath));
+        return deploy(servicePath, actual);
+    }
+
+    /**
+     * Looks up the deployed resources the service path can keep and the ones it
+     * no longer needs.
+     */
+    private Environment discover(List<ServiceFunction> servicePath, DeploymentManifest manifest) {
+        Environment actual = new Environment();
+        Set<String> functionNames = new HashSet<>();
+        Set<String> dependencies = new HashSet<>();
+        for (ServiceFunction function : servicePath) {
+            functionNames.add(function.name);
+            dependencies.addAll(function.dependencies);
+        }
+
+        List<String> apiIds;
+        if (manifest != null) {
+            actual.functions.addAll(manifest.functions.keySet());
+            manifest.functions.forEach((name, deployed) -> {
+                if (deployed.url != null) {
+                    actual.exposedFunctions.add(name);
+                }
+            });
+            actual.layers.addAll(manifest.layers.keySet());
+            actual.stageDeployed = manifest.stageDeployed;
+            apiIds = manifest.apiId == null ? Collections.emptyList() : List.of(manifest.apiId);
+        } else {
+            System.out.println("No deployment manifest found, discovering the deployed resources.");
+            int prefix = Constants.LAMBDA_FUNCTION_PREFIX.length();
+            lambda.listLambdaFunctionsByPrefix(Constants.LAMBDA_FUNCTION_PREFIX)
+                    .forEach(name -> actual.functions.add(name.substring(prefix)));
+            lambda.listLayersByPrefix(Constants.LAMBDA_FUNCTION_PREFIX)
+                    .forEach(name -> actual.layers.add(name.substring(prefix)));
+            apiIds = apiGateway.listApiGatewaysByName(Constants.API_GATEWAY_NAME);
+        }
+        actual.roleArn = iam.getRoleArn(Constants.LAMBDA_SERVICE_ROLE_NAME);
+
+        for (String apiId : apiIds) {
+            if (actual.apiId != null) {
+                actual.obsoleteApis.add(apiId);
+                continue;
+            }
+            List<Resource> resources = apiGateway.getApiResources(apiId);
+            if (resources == null) {
+                continue; // deleted since the last deployment
+            }
+            actual.apiId = apiId;
+            classifyResources(actual, resources, functionNames);
+        }
+        if (actual.apiId == null) {
+            // the invoke permissions name the former API
+            actual.exposedFunctions.clear();
+            actual.stageDeployed = false;
+        }
+
+        for (String function : actual.functions) {
+            if (!functionNames.contains(function)) {
+                actual.obsoleteFunctions.add(function);
+            }
+        }
+        for (String layer : actual.layers) {
+            if (!dependencies.contains(layer)) {
+                actual.obsoleteLayers.add(layer);
+            }
+        }
+        return actual;
+    }
+
+    /**
+     * Keeps the resources of the API that expose a function of the path through
+     * a Lambda integration. Other resources below the root are deleted.
+     */
+    private static void classifyResources(Environment actual, List<Resource> resources, Set<String> functionNames) {
+        String rootResourceId = null;
+        for (Resource resource : resources) {
+            if ("/".equals(resource.path())) {
+                rootResourceId = resource.id();
+            }
+        }
+        for (Resource resource : resources) {
+            if (resource.parentId() == null || !resource.parentId().equals(rootResourceId)) {
+                continue; // the root, or below a resource that is kept or deleted as a whole
+            }
+            String name = resource.pathPart();
+            Method method = resource.resourceMethods().get(HTTP_METHOD);
+            Integration integration = method == null ? null : method.methodIntegration();
+            boolean integrated = integration != null && integration.uri() != null
+                    && integration.uri().contains(":function:" + Constants.LAMBDA_FUNCTION_PREFIX + name + "/");
+            if (functionNames.contains(name) && integrated) {
+                actual.exposedResources.add(name);
+            } else {
+                actual.obsoleteResources.add(name);
+            }
+        }
+    }
+
+    /**
+     * Applies the difference between the service path and the actual state as
+     * a graph of tasks. Every step starts once the steps it needs are done, so
+     * independent functions, layers and API resources are deployed concurrently.
+     */
+    private List<String> deploy(List<ServiceFunction> servicePath, Environment actual) {
         List<String> functionUrls = new ArrayList<>();
+        TaskGraph graph = new TaskGraph(Constants.DEPLOYMENT_PARALLELISM);
+
+        // Create the IAM role for Lambda, or complete an existing one. Neither waits for
+        // IAM to propagate a new role, the functions are created once Lambda can assume it.
+        Task<String> role = graph.addBlocking("role", () -> {
+            String roleArn = iam.ensureAWSRole(Constants.LAMBDA_SERVICE_ROLE_NAME);
+            System.out.println("Role " + Constants.LAMBDA_SERVICE_ROLE_NAME + ": " + roleArn);
+            return roleArn;
+        });
+
+        // Delete what the service path no longer needs
+        Map<String, Task<Void>> deletedFunctions = new HashMap<>();
+        for (String name : actual.obsoleteFunctions) {
+            deletedFunctions.put(name, graph.add("delete function " + name,
+                    () -> lambda.deleteLambdaAsync(Constants.LAMBDA_FUNCTION_PREFIX + name)));
+        }
+        Map<String, Task<Void>> deletedLayers = new HashMap<>();
+        for (String dependency : actual.obsoleteLayers) {
+            String layerName = Constants.LAMBDA_FUNCTION_PREFIX + dependency;
+            deletedLayers.put(dependency, graph.add("delete layer " + dependency,
+                    () -> lambda.listLayerVersionsAsync(layerName).thenCompose(versions -> CompletableFuture.allOf(
+                            versions.stream().map(version -> lambda.deleteLayerVersionAsync(layerName, version))
+                                    .toArray(CompletableFuture<?>[]::new)))));
+        }
+        for (String apiId : actual.obsoleteApis) {
+            graph.add("delete api " + apiId, () -> apiGateway.deleteApiGatewayAsync(apiId));
+        }
 
-        try {
-            // Create the IAM role for Lambda
-            String roleArn = iam.createAWSRole(Constants.LAMBDA_SERVICE_ROLE_NAME);
-            System.out.println("Created role " + Constants.LAMBDA_SERVICE_ROLE_NAME + ": " + roleArn);
+        // The ARNs of the functions are known before they are deployed, so the API does
+        // not wait for the uploads. Its integrations only invoke the functions once called.
+        Map<String, String> lambdaArns = new LinkedHashMap<>();
+        for (ServiceFunction function : servicePath) {
+            lambdaArns.put(function.name, lambda.functionArn(function.name));
+        }
 
-            // Create the API Gateway
-            String apiId = apiGateway.createApiGateway(Constants.API_GATEWAY_NAME);
-            System.out.println("API Gateway created with ID: " + apiId);
+        // Create the API Gateway with a resource and Lambda integration for every function,
+        // or replace the resources of an existing one, with a single OpenAPI import each
+        boolean apiChanged = actual.apiId == null || !actual.obsoleteResources.isEmpty()
+                || !actual.exposedResources.containsAll(lambdaArns.keySet());
+        Task<String> api;
+        Task<?> apiDefinition;
+        if (actual.apiId == null) {
+            api = graph.add("api", () -> apiGateway.importApiAsync(Constants.API_GATEWAY_NAME, lambdaArns, HTTP_METHOD)
+                    .thenApply(apiId -> {
+                        System.out.println("API Gateway created with ID: " + apiId);
+                        return apiId;
+                    }));
+            apiDefinition = api;
+        } else {
+            api = graph.add("api", () -> CompletableFuture.completedFuture(actual.apiId));
+            apiDefinition = !apiChanged ? api
+                    : graph.add("api definition",
+                            () -> apiGateway.putApiDefinitionAsync(api.get(), Constants.API_GATEWAY_NAME, lambdaArns,
+                                    HTTP_METHOD).thenApply(ignored -> {
+                                        System.out.println("API Gateway " + api.get() + " resources replaced");
+                                        return null;
+                                    }),
+                            api);
+        }
 
-            // Create the Lambda layers
-            Map<String, String> layerArnMap = createRequiredLayers(servicePath);
+        // Create the Lambda layers
+        Map<String, Task<String>> layers = createRequiredLayers(graph, servicePath);
 
-            // For each service path, upload Lambda and create API integration
-            for (ServiceFunction function : servicePath) {
-                String functionUrl = deployLambda(function, roleArn, apiId, layerArnMap);
-                functionUrls.add(functionUrl);
+        // Deploy each function once and expose it through the API
+        Map<String, Task<LambdaDeployment>> uploads = new HashMap<>();
+        Map<String, Task<String>> exposed = new LinkedHashMap<>();
+        for (ServiceFunction function : servicePath) {
+            if (!exposed.containsKey(function.name)) {
+                Task<LambdaDeployment> upload = deployLambda(graph, function, role, layers);
+                uploads.put(function.name, upload);
+                exposed.put(function.name,
+                        exposeLambdaThroughApi(graph, api, apiDefinition, upload, function.name, actual));
             }
+        }
 
-            // Deploy the API
-            apiGateway.deployApi(apiId, Constants.API_GATEWAY_STAGE_NAME);
-            System.out.println("API deployed to " + Constants.API_GATEWAY_STAGE_NAME + " stage");
+        // Deploy the API, unless its resources are the same as in the deployed stage
+        Task<Void> stage = null;
+        if (apiChanged || !actual.stageDeployed) {
+            stage = graph.add("api deployment",
+                    () -> apiGateway.deployApiAsync(api.get(), Constants.API_GATEWAY_STAGE_NAME)
+                            .thenApply(ignored -> {
+                                System.out.println("API deployed to " + Constants.API_GATEWAY_STAGE_NAME + " stage");
+                                return null;
+                            }), apiDefinition);
+        } else {
+            System.out.println("API resources are unchanged, skipped the deployment to the "
+                    + Constants.API_GATEWAY_STAGE_NAME + " stage");
+        }
 
+        try {
+            graph.join();
         } catch (Exception e) {
             System.out.println("Failed to deploy services: " + e.getMessage());
             // TODO: Handle exception (logging, retrying, etc.)
         }
 
+        // Record what exists now, including what failed to be deleted, for the next run
+        DeploymentManifest manifest = new DeploymentManifest();
+        manifest.region = region.toString();
+        manifest.roleArn = role.isSucceeded() ? role.get() : null;
+        manifest.apiId = api.isSucceeded() ? api.get() : null;
+        manifest.stageDeployed = stage == null || stage.isSucceeded();
+        layers.forEach((dependency, layer) -> {
+            if (layer.isSucceeded()) {
+                manifest.layers.put(dependency, layer.get());
+            }
+        });
+        deletedLayers.forEach((dependency, deletion) -> {
+            if (!deletion.isSucceeded()) {
+                manifest.layers.put(dependency, null);
+            }
+        });
+        uploads.forEach((name, upload) -> {
+            if (upload.isSucceeded()) {
+                DeployedFunction deployed = new DeployedFunction();
+                deployed.arn = upload.get().getArn();
+                deployed.url = exposed.get(name).isSucceeded() ? exposed.get(name).get() : null;
+                manifest.functions.put(name, deployed);
+            }
+        });
+        deletedFunctions.forEach((name, deletion) -> {
+            if (!deletion.isSucceeded()) {
+                manifest.functions.put(name, new DeployedFunction());
+            }
+        });
+        manifest.save(manifestPath());
+
+        // Return the URLs of the functions that were deployed, in the order of the path
+        for (ServiceFunction function : servicePath) {
+            Task<String> functionUrl = exposed.get(function.name);
+            if (!functionUrl.isSucceeded()) {
+                break;
+            }
+            functionUrls.add(functionUrl.get());
+        }
         return functionUrls;
     }
 
     @Override
     public void resetEnvironment() {
+        resetEnvironment(Collections.emptyList());
+    }
+
+    /**
+     * Deletes every deployed resource, except for the functions of the service
+     * path, the layers they depend on and, if there are any, the role of the
+     * functions. They are about to be deployed again, which only uploads the
+     * ones whose content changed and does not wait for a new role.
+     *
+     * @param keptPath the service path whose functions and layers to keep
+     */
+    public void resetEnvironment(List<ServiceFunction> keptPath) {
+        Set<String> keptFunctions = new HashSet<>();
+        Set<String> keptLayers = new HashSet<>();
+        for (ServiceFunction function : keptPath) {
+            keptFunctions.add(Constants.LAMBDA_FUNCTION_PREFIX + function.name);
+            for (String dependency : function.dependencies) {
+                keptLayers.add(Constants.LAMBDA_FUNCTION_PREFIX + dependency);
+            }
+        }
+
         // TODO: All those loops work, but it might be better to just check, if our
         // specific Gateway API, Role or Layer exists.
         // On the other hand is this very flexible.
 
-        try {
-            // Clean up Lambda functions
-            List<String> lambdaFunctionNames = lambda
-                    .listLambdaFunctionsByPrefix(Constants.LAMBDA_FUNCTION_PREFIX);
-            for (String lambdaFunctionName : lambdaFunctionNames) {
-                lambda.deleteLambda(lambdaFunctionName);
-                System.out.println("Deleted Lambda function: " + lambdaFunctionName);
+        // Every class of resources is listed and deleted concurrently. Deleting an API
+        // Gateway removes its resources, methods, stages and deployments along with it.
+        TaskGraph graph = new TaskGraph(Constants.TEARDOWN_PARALLELISM);
+        Teardown functions = new Teardown("Lambda function");
+        Teardown layerVersions = new Teardown("layer version");
+        Teardown apis = new Teardown("API Gateway");
+        Teardown roles = new Teardown("IAM role");
+
+        // Clean up Lambda functions
+        graph.addBlocking("list functions", () -> {
+            for (String functionName : lambda.listLambdaFunctionsByPrefix(Constants.LAMBDA_FUNCTION_PREFIX)) {
+                if (keptFunctions.contains(functionName)) {
+                    continue;
+                }
+                functions.delete(graph, functionName, () -> lambda.deleteLambdaAsync(functionName));
             }
-
-            // Clean up all versions of a layer to delete it
-            List<String> layerNames = lambda.listLayersByPrefix(Constants.LAMBDA_FUNCTION_PREFIX);
-            for (String layerName : layerNames) {
-                lambda.deleteLayerCompletely(layerName);
-                System.out.println("Successfully deleted all versions of layer " + layerName);
+            return null;
+        });
+
+        // Clean up all versions of a layer to delete it
+        graph.addBlocking("list layers", () -> {
+            for (String layerName : lambda.listLayersByPrefix(Constants.LAMBDA_FUNCTION_PREFIX)) {
+                if (keptLayers.contains(layerName)) {
+                    continue;
+                }
+                graph.add("list versions " + layerName, () -> lambda.listLayerVersionsAsync(layerName)
+                        .thenApply(versions -> {
+                            for (long version : versions) {
+                                layerVersions.delete(graph, layerName + ":" + version,
+                                        () -> lambda.deleteLayerVersionAsync(layerName, version));
+                            }
+                            return null;
+                        }));
             }
+            return null;
+        });
 
-            // Clean up API Gateway
-            List<String> apiGatewayIds = apiGateway.listApiGatewaysByName(Constants.API_GATEWAY_NAME);
-            for (String apiId : apiGatewayIds) {
-                apiGateway.deleteApiGateway(apiId);
-                System.out.println("Deleted API Gateway: " + apiId);
+        // Clean up API Gateway
+        graph.addBlocking("list APIs", () -> {
+            for (String apiId : apiGateway.listApiGatewaysByName(Constants.API_GATEWAY_NAME)) {
+                apis.delete(graph, apiId, () -> apiGateway.deleteApiGatewayAsync(apiId));
             }
-
-            // Clean up IAM roles (e.g., by prefix or name)
-            List<String> roleNames = iam.listRolesByPrefix(Constants.LAMBDA_SERVICE_ROLE_NAME);
-            for (String roleName : roleNames) {
-                iam.deleteAWSRole(roleName);
-                System.out.println("Deleted IAM role: " + roleName);
+            return null;
+        });
+
+        // Clean up IAM roles (e.g., by prefix or name)
+        graph.addBlocking("list roles", () -> {
+            for (String roleName : iam.listRolesByPrefix(Constants.LAMBDA_SERVICE_ROLE_NAME)) {
+                if (!keptPath.isEmpty() && roleName.equals(Constants.LAMBDA_SERVICE_ROLE_NAME)) {
+                    continue;
+                }
+                roles.delete(graph, roleName, () -> iam.deleteAWSRoleAsync(roleName));
             }
+            return null;
+        });
 
-            // Allow AWS time to propagate changes
-            Utils.sleep(1000);
-
+        try {
+            graph.join();
         } catch (Exception e) {
             System.err.println("Error occurred while resetting environment: " + e.getMessage());
             e.printStackTrace(); // TODO: Consider better logging or error handling
         }
+
+        for (Teardown teardown : List.of(functions, layerVersions, apis, roles)) {
+            System.out.println(teardown.summary());
+        }
+
+        // The manifest no longer describes what is deployed
+        try {
+            Files.deleteIfExists(manifestPath());
+        } catch (IOException e) {
+            System.err.println("Could not delete deployment manifest: " + e.getMessage());
+        }
     }
 
     public IamService getIam() {
@@ -160,84 +487,181 @@ public class AwsManager implements ProviderManager {
         return sts;
     }
 
-    private Map<String, String> createRequiredLayers(List<ServiceFunction> servicePath) {
-        Map<String, String> layerArnMap = new HashMap<>();
-        List<String> dependencies = new ArrayList<>();
+    private Map<String, Task<String>> createRequiredLayers(TaskGraph graph, List<ServiceFunction> servicePath) {
+        Map<String, Task<String>> layerTasks = new HashMap<>();
 
         for (ServiceFunction function : servicePath) {
             for (String dependency : function.dependencies) {
-                if (!dependencies.contains(dependency)) {
-                    dependencies.add(dependency);
+                if (layerTasks.containsKey(dependency)) {
+                    continue;
                 }
+                String layerName = Constants.LAMBDA_FUNCTION_PREFIX + dependency;
+                String zipPath = Constants.LAYER_DIRECTORY + dependency + ".zip";
+
+                // Hashing and reading the zip file block, so they run on the graph's
+                // executor; the lookup and the upload are chained after them
+                Task<String> hash = graph.addBlocking("hash layer " + dependency,
+                        () -> LambdaService.layerSha256(zipPath));
+                Task<String> existing = graph.add("find layer " + dependency,
+                        () -> lambda.findLayerVersionAsync(layerName, hash.get(), Constants.LAMBDA_RUNTIME), hash);
+                Task<byte[]> content = graph.addBlocking("read layer " + dependency,
+                        () -> existing.get() != null ? null : LambdaService.readLayerZip(zipPath), existing);
+
+                layerTasks.put(dependency, graph.add("layer " + dependency,
+                        () -> (existing.get() != null
+                                ? CompletableFuture.completedFuture(existing.get())
+                                : lambda.publishLayerAsync(layerName, content.get(), hash.get(),
+                                        Constants.LAMBDA_RUNTIME))
+                                .thenApply(layerArn -> {
+                                    System.out.println("Layer " + layerName + ": " + layerArn);
+                                    return layerArn;
+                                }), content));
             }
         }
 
-        for (String dependency : dependencies) {
-            String layerName = Constants.LAMBDA_FUNCTION_PREFIX + dependency;
-            String zipPath = Constants.LAYER_DIRECTORY + dependency + ".zip";
-
-            String layerArn = lambda.createLayer(layerName, zipPath, Constants.LAMBDA_RUNTIME);
-            layerArnMap.put(dependency, layerArn);
-            System.out.println("Created Layer " + layerName + ": " + layerArn);
-        }
-
-        return layerArnMap;
+        return layerTasks;
     }
 
     /**
-     * Zip and upload a lambda function and expose it via an API Gateway.
+     * Zip and upload a lambda function. An existing function is updated, and
+     * only uploaded if its code changed. The zip file is read and hashed with
+     * the compression, so the upload does not block the async client.
      * 
-     * @param functionName
-     * @param roleArn
-     * @param apiId
-     * @return
+     * @param function the function to deploy
+     * @param role     the task creating the role of the function
+     * @param layers   the tasks creating the layers, by dependency
+     * @return the task that completes with the ARN of the function
      */
-    private String deployLambda(ServiceFunction function, String roleArn, String apiId, Map<String, String> layerArnMap) {
+    private Task<LambdaDeployment> deployLambda(TaskGraph graph, ServiceFunction function, Task<String> role,
+            Map<String, Task<String>> layers) {
         String functionPath = Constants.FUNCTION_DIRECTORY + File.separator + function.provider + File.separator
                 + function.name;
-        String zipPath = Utils.zipFile(functionPath + ".mjs", functionPath + ".zip");
+        Task<FunctionZip> zip = graph.addBlocking("zip " + function.name,
+                () -> FunctionZip.read(Utils.zipFile(functionPath + ".mjs", functionPath + ".zip")));
 
-        List<String> layerArns = new ArrayList<>();
+        List<Task<?>> uploadDependencies = new ArrayList<>(List.of(role, zip));
         for (String dependency : function.dependencies) {
-            layerArns.add(layerArnMap.get(dependency));
+            uploadDependencies.add(layers.get(dependency));
         }
-
-        String functionArn = lambda.uploadLambda(function, zipPath, roleArn, layerArns);
-        String functionUrl = exposeLambdaThroughApi(apiId, functionArn, function.name, "POST");
-        System.out.println("Deployed function " + function.name + ": " + functionUrl);
-
-        return functionUrl;
+        return graph.add("upload " + function.name, () -> {
+            List<String> layerArns = new ArrayList<>();
+            for (String dependency : function.dependencies) {
+                layerArns.add(layers.get(dependency).get());
+            }
+            return lambda.deployLambdaAsync(function, zip.get(), role.get(), layerArns);
+        }, uploadDependencies.toArray(new Task<?>[0]));
     }
 
     /**
-     * Expose a Lambda function via API Gateway by creating a resource and
-     * integrating the Lambda.
+     * Expose a Lambda function via API Gateway. The resource and its Lambda
+     * integration are part of the API definition, so only API Gateway's
+     * permission to invoke the function is added, unless it has it already.
      * 
-     * @param apiId        The API ID of the Gateway
-     * @param lambdaArn    ARN of the Lambda function to expose
-     * @param resourcePath API resource path (e.g., /functionname)
-     * @param httpMethod   HTTP method (e.g., GET, POST)
+     * @param api           The task creating the API Gateway
+     * @param apiDefinition The task importing the resources of the API
+     * @param upload        The task deploying the Lambda function to expose
+     * @param resourcePath  API resource path (e.g., /functionname)
+     * @param actual        The resources that exist already
      */
-    private String exposeLambdaThroughApi(String apiId, String lambdaArn, String resourcePath, String httpMethod) {
-        String rootResourceId = apiGateway.getRootResourceId(apiId);
+    private Task<String> exposeLambdaThroughApi(TaskGraph graph, Task<String> api, Task<?> apiDefinition,
+            Task<LambdaDeployment> upload, String resourcePath, Environment actual) {
+        // A single statement allows every resource of the API to invoke the function
+        boolean permitted = actual.exposedFunctions.contains(resourcePath);
+        Task<Void> permission = graph.add("permission " + resourcePath,
+                () -> permitted && !upload.get().isCreated() ? CompletableFuture.completedFuture(null)
+                        : lambda.addApiInvokePermissionAsync(upload.get().getArn(), api.get()),
+                api, upload);
 
-        // Create a new resource under root (e.g., /functionname)
-        String resourceId = apiGateway.createApiResource(apiId, rootResourceId, resourcePath);
+        // Construct and return the full API Gateway URL for the Lambda function
+        return graph.add("expose " + resourcePath, () -> {
+            String apiUrl = "https://" + api.get() + ".execute-api." + this.region + ".amazonaws.com/"
+                    + Constants.API_GATEWAY_STAGE_NAME + "/" + resourcePath;
+            System.out.println("Deployed function " + resourcePath + ": " + apiUrl);
+            return CompletableFuture.completedFuture(apiUrl);
+        }, apiDefinition, permission);
+    }
 
-        // Create an HTTP method (e.g., POST)
-        apiGateway.createApiMethod(apiId, resourceId, httpMethod);
+    private Path manifestPath() {
+        return Paths.get(Constants.DEPLOYMENT_DIRECTORY + region + ".json");
+    }
 
-        // Integrate Lambda with API Gateway
-        apiGateway.integrateApiWithLambda(apiId, resourceId, httpMethod, lambdaArn);
+    /**
+     * The deployed resources a deploy starts from, and the ones it deletes.
+     */
+    private static final class Environment {
+
+        // null if the role or the API have to be created
+        private String roleArn;
+        private String apiId;
+        private boolean stageDeployed;
+        // the names of the deployed functions and layers
+        private final Set<String> functions = new TreeSet<>();
+        private final Set<String> layers = new TreeSet<>();
+        // the functions API Gateway may invoke
+        private final Set<String> exposedFunctions = new HashSet<>();
+        // the names of the resources below the root, which are named after the
+        // function they integrate
+        private final Set<String> exposedResources = new HashSet<>();
+        private final Set<String> obsoleteResources = new TreeSet<>();
+        private final Set<String> obsoleteFunctions = new TreeSet<>();
+        private final Set<String> obsoleteLayers = new TreeSet<>();
+        private final List<String> obsoleteApis = new ArrayList<>();
+
+        private String describeChanges(List<ServiceFunction> servicePath) {
+            Set<String> desired = new TreeSet<>();
+            for (ServiceFunction function : servicePath) {
+                desired.add(function.name);
+            }
+            int created = 0;
+            int newResources = 0;
+            for (String name : desired) {
+                created += functions.contains(name) ? 0 : 1;
+                newResources += exposedResources.contains(name) ? 0 : 1;
+            }
+            return String.format(Locale.ROOT,
+                    "Reconciling deployment: %s role, %s API, %d functions to create, %d to update if changed, "
+                            + "%d to delete, %d API resources to create, %d to delete, %d layers to delete.",
+                    roleArn == null ? "new" : "existing", apiId == null ? "new" : "existing", created,
+                    desired.size() - created, obsoleteFunctions.size(), newResources, obsoleteResources.size(),
+                    obsoleteLayers.size());
+        }
+    }
+
+    /**
+     * Deletes the resources of one class and counts them for the summary of a
+     * reset. A failed deletion is reported, but does not stop the others.
+     */
+    private static final class Teardown {
 
-        // Add permissions for API Gateway to invoke the Lambda
-        lambda.addLambdaInvokePermission(lambdaArn, apiId, resourcePath, httpMethod);
+        private final String resource;
+        private final long started = System.nanoTime();
+        private final AtomicInteger deleted = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong finished = new AtomicLong(started);
 
-        // Construct and return the full API Gateway URL for the Lambda function
-        String apiUrl = "https://" + apiId + ".execute-api." + this.region + ".amazonaws.com/"
-                + Constants.API_GATEWAY_STAGE_NAME + "/" + resourcePath;
-        System.out.println("Exposed Lambda URL: " + apiUrl);
+        private Teardown(String resource) {
+            this.resource = resource;
+        }
 
-        return apiUrl;
+        private void delete(TaskGraph graph, String name, Supplier<CompletableFuture<Void>> deletion) {
+            graph.add("delete " + resource + " " + name, () -> deletion.get().handle((ignored, failure) -> {
+                finished.accumulateAndGet(System.nanoTime(), Math::max);
+                if (failure == null) {
+                    deleted.incrementAndGet();
+                    System.out.println("Deleted " + resource + ": " + name);
+                } else {
+                    failed.incrementAndGet();
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    System.err.println("Failed to delete " + resource + " " + name + ": " + cause.getMessage());
+                }
+                return null;
+            }));
+        }
+
+        private String summary() {
+            String summary = String.format(Locale.ROOT, "Deleted %d %ss in %d ms", deleted.get(), resource,
+                    (finished.get() - started) / 1_000_000);
+            return failed.get() == 0 ? summary + "." : summary + " (" + failed.get() + " failed).";
+        }
     }
-}
\ No newline at end of file
+}
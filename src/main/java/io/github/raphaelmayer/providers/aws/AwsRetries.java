@@ -0,0 +1,74 @@
+package io.github.raphaelmayer.providers.aws;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+/**
+ * Repeats asynchronous AWS calls that failed for a transient reason, with
+ * exponential backoff and jitter. The SDK retries throttled calls only a few
+ * times, which many concurrent calls of the same kind quickly exhaust.
+ */
+public final class AwsRetries {
+
+    private static final int RETRIES = 8;
+    private static final long BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private AwsRetries() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * @return true if AWS rejected the call because of its request rate
+     */
+    public static boolean isThrottling(Throwable failure) {
+        return failure instanceof AwsServiceException && ((AwsServiceException) failure).isThrottlingException();
+    }
+
+    /**
+     * Repeats the call while it fails with a throttling error.
+     */
+    public static <T> CompletableFuture<T> withThrottlingRetries(Supplier<CompletableFuture<T>> call) {
+        return withRetries(call, AwsRetries::isThrottling);
+    }
+
+    /**
+     * Repeats the call while it fails with an error the predicate accepts.
+     *
+     * @param call      starts the call, once per attempt
+     * @param retryable decides if a failure is transient
+     */
+    public static <T> CompletableFuture<T> withRetries(Supplier<CompletableFuture<T>> call,
+            Predicate<Throwable> retryable) {
+        return withRetries(call, retryable, 0);
+    }
+
+    private static <T> CompletableFuture<T> withRetries(Supplier<CompletableFuture<T>> call,
+            Predicate<Throwable> retryable, int attempt) {
+        return call.get().handle((response, failure) -> {
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            if (!retryable.test(cause) || attempt >= RETRIES) {
+                CompletableFuture<T> failed = new CompletableFuture<>();
+                failed.completeExceptionally(cause);
+                return failed;
+            }
+            // randomized, so concurrent calls that failed together do not retry together
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BACKOFF_MILLIS << attempt);
+            Executor delayed = CompletableFuture.delayedExecutor(
+                    backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1), TimeUnit.MILLISECONDS);
+            return CompletableFuture.supplyAsync(() -> null, delayed)
+                    .thenCompose(ignored -> withRetries(call, retryable, attempt + 1));
+        }).thenCompose(Function.identity());
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.raphaelmayer.providers.aws;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * The resources of the last deployment into a region, as stored in a local
+ * JSON file. A reconciling deploy reads it instead of listing every function,
+ * layer and API of the account, and verifies it with a few describe calls.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DeploymentManifest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public String region;
+    public String roleArn;
+    public String apiId;
+    // true once the API was deployed to its stage with all of its resources
+    public boolean stageDeployed;
+    // the deployed functions by name
+    public Map<String, DeployedFunction> functions = new TreeMap<>();
+    // the ARNs of the deployed layer versions by dependency
+    public Map<String, String> layers = new TreeMap<>();
+
+    /**
+     * A function that was deployed and exposed through the API.
+     */
+    public static class DeployedFunction {
+        public String arn;
+        public String url;
+    }
+
+    /**
+     * @return the manifest in the file, or null if there is none or it cannot be
+     *         read
+     */
+    public static DeploymentManifest load(Path file) {
+        File source = file.toFile();
+        if (!source.isFile()) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(source, DeploymentManifest.class);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable deployment manifest " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(Path file) {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            // write to a temporary file first, so readers never see a partial file
+            Path temp = Files.createTempFile(directory, "deployment", ".tmp");
+            MAPPER.writeValue(temp.toFile(), this);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // without a manifest, the next reconciling deploy discovers the resources again
+            System.err.println("Could not write deployment manifest: " + e.getMessage());
+        }
+    }
+}
@@ -1,24 +1,33 @@
 package io.github.raphaelmayer.providers.aws;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
+import software.amazon.awssdk.services.iam.IamAsyncClient;
 import software.amazon.awssdk.services.iam.IamClient;
 import software.amazon.awssdk.services.iam.model.AttachRolePolicyRequest;
+import software.amazon.awssdk.services.iam.model.AttachedPolicy;
 import software.amazon.awssdk.services.iam.model.CreateRoleRequest;
 import software.amazon.awssdk.services.iam.model.CreateRoleResponse;
 import software.amazon.awssdk.services.iam.model.DeleteRoleRequest;
 import software.amazon.awssdk.services.iam.model.DetachRolePolicyRequest;
-import software.amazon.awssdk.services.iam.model.ListRolesResponse;
+import software.amazon.awssdk.services.iam.model.GetRoleRequest;
+import software.amazon.awssdk.services.iam.model.ListAttachedRolePoliciesRequest;
+import software.amazon.awssdk.services.iam.model.NoSuchEntityException;
 import software.amazon.awssdk.services.iam.model.Role;
 
 public class IamService {
 
     private final IamClient iamClient;
+    private final IamAsyncClient iamAsyncClient;
     private final List<String> lambdaPolicies;
 
-    public IamService(IamClient iamClient, List<String> lambdaPolicies) {
+    public IamService(IamClient iamClient, IamAsyncClient iamAsyncClient, List<String> lambdaPolicies) {
         this.iamClient = iamClient;
+        this.iamAsyncClient = iamAsyncClient;
         this.lambdaPolicies = lambdaPolicies;
     }
 
@@ -31,13 +40,47 @@ public class IamService {
         CreateRoleResponse response = iamClient.createRole(request);
 
         lambdaPolicies.forEach(policyArn -> attachPolicyToRole(name, policyArn));
+        // IAM needs a few seconds until Lambda can assume the new role. Instead of waiting
+        // here, the Lambda calls that pass the role retry until it is ready.
         Role role = response.role();
+        return role.arn();
+    }
+
+    /**
+     * Creates the role, or attaches the policies an existing role lacks. An
+     * existing role with all policies is used right away, without any call that
+     * changes it.
+     *
+     * @return the ARN of the role
+     */
+    public String ensureAWSRole(String name) {
+        String roleArn = getRoleArn(name);
+        if (roleArn == null) {
+            return createAWSRole(name);
+        }
+        Set<String> attached = iamClient.listAttachedRolePoliciesPaginator(ListAttachedRolePoliciesRequest.builder()
+                .roleName(name)
+                .build())
+                .attachedPolicies().stream()
+                .map(AttachedPolicy::policyArn)
+                .collect(Collectors.toSet());
+        lambdaPolicies.stream()
+                .filter(policyArn -> !attached.contains(policyArn))
+                .forEach(policyArn -> attachPolicyToRole(name, policyArn));
+        return roleArn;
+    }
+
+    /**
+     * @return the ARN of the role, or null if it does not exist
+     */
+    public String getRoleArn(String name) {
         try {
-            Thread.sleep(7000); // Sleep to handle eventual consistency
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            return iamClient.getRole(GetRoleRequest.builder()
+                    .roleName(name)
+                    .build()).role().arn();
+        } catch (NoSuchEntityException e) {
+            return null;
         }
-        return role.arn();
     }
 
     public void deleteAWSRole(String name) {
@@ -48,6 +91,23 @@ public class IamService {
         iamClient.deleteRole(request);
     }
 
+    /**
+     * Like {@link #deleteAWSRole(String)}, but with the async client. The
+     * policies are detached concurrently, policies that are not attached are
+     * ignored.
+     */
+    public CompletableFuture<Void> deleteAWSRoleAsync(String name) {
+        CompletableFuture<?>[] detached = lambdaPolicies.stream()
+                .map(policyArn -> detachPolicyFromRoleAsync(name, policyArn))
+                .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(detached)
+                .thenCompose(ignored -> AwsRetries.withThrottlingRetries(
+                        () -> iamAsyncClient.deleteRole(DeleteRoleRequest.builder()
+                                .roleName(name)
+                                .build())))
+                .thenApply(response -> null);
+    }
+
     public void attachPolicyToRole(String roleName, String policyArn) {
         AttachRolePolicyRequest request = AttachRolePolicyRequest.builder()
                 .roleName(roleName)
@@ -64,9 +124,24 @@ public class IamService {
         iamClient.detachRolePolicy(request);
     }
 
+    private CompletableFuture<Void> detachPolicyFromRoleAsync(String roleName, String policyArn) {
+        DetachRolePolicyRequest request = DetachRolePolicyRequest.builder()
+                .roleName(roleName)
+                .policyArn(policyArn)
+                .build();
+        return AwsRetries.withThrottlingRetries(() -> iamAsyncClient.detachRolePolicy(request))
+                .handle((response, failure) -> {
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    if (cause != null && !(cause instanceof NoSuchEntityException)) {
+                        throw new CompletionException(cause);
+                    }
+                    return null;
+                });
+    }
+
     public List<String> listRolesByPrefix(String prefix) {
-        ListRolesResponse response = iamClient.listRoles();
-        return response.roles().stream()
+        // the paginator follows the next pages, a single call returns at most 100 roles
+        return iamClient.listRolesPaginator().roles().stream()
                 .filter(role -> role.roleName().startsWith(prefix))
                 .map(Role::roleName)
                 .collect(Collectors.toList());
@@ -2,74 +2,260 @@ package io.github.raphaelmayer.providers.aws;
 
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import io.github.raphaelmayer.models.ServiceFunction;
 import io.github.raphaelmayer.util.Constants;
+import io.github.raphaelmayer.util.Utils;
 import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.lambda.LambdaAsyncClient;
 import software.amazon.awssdk.services.lambda.LambdaClient;
+import software.amazon.awssdk.services.lambda.model.AddPermissionRequest;
 import software.amazon.awssdk.services.lambda.model.CreateFunctionRequest;
 import software.amazon.awssdk.services.lambda.model.CreateFunctionResponse;
 import software.amazon.awssdk.services.lambda.model.DeleteFunctionRequest;
 import software.amazon.awssdk.services.lambda.model.DeleteLayerVersionRequest;
 import software.amazon.awssdk.services.lambda.model.FunctionConfiguration;
+import software.amazon.awssdk.services.lambda.model.GetFunctionConfigurationRequest;
+import software.amazon.awssdk.services.lambda.model.GetFunctionConfigurationResponse;
+import software.amazon.awssdk.services.lambda.model.GetFunctionRequest;
+import software.amazon.awssdk.services.lambda.model.InvalidParameterValueException;
 import software.amazon.awssdk.services.lambda.model.LambdaException;
+import software.amazon.awssdk.services.lambda.model.Layer;
 import software.amazon.awssdk.services.lambda.model.LayerVersionContentInput;
 import software.amazon.awssdk.services.lambda.model.LayerVersionsListItem;
 import software.amazon.awssdk.services.lambda.model.LayersListItem;
-import software.amazon.awssdk.services.lambda.model.ListFunctionsResponse;
 import software.amazon.awssdk.services.lambda.model.ListLayerVersionsRequest;
-import software.amazon.awssdk.services.lambda.model.ListLayerVersionsResponse;
-import software.amazon.awssdk.services.lambda.model.ListLayersResponse;
 import software.amazon.awssdk.services.lambda.model.PublishLayerVersionRequest;
 import software.amazon.awssdk.services.lambda.model.PublishLayerVersionResponse;
+import software.amazon.awssdk.services.lambda.model.RemovePermissionRequest;
+import software.amazon.awssdk.services.lambda.model.ResourceConflictException;
+import software.amazon.awssdk.services.lambda.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.lambda.model.UpdateFunctionCodeRequest;
+import software.amazon.awssdk.services.lambda.model.UpdateFunctionConfigurationRequest;
 
 public class LambdaService {
 
+    /**
+     * The outcome of {@link LambdaService#deployLambdaAsync}.
+     */
+    public static final class LambdaDeployment {
+
+        private final String arn;
+        private final boolean created;
+
+        private LambdaDeployment(String arn, boolean created) {
+            this.arn = arn;
+            this.created = created;
+        }
+
+        public String getArn() {
+            return arn;
+        }
+
+        /**
+         * @return true if the function did not exist before
+         */
+        public boolean isCreated() {
+            return created;
+        }
+    }
+
+    /**
+     * The zip file of a Lambda function and its SHA-256, as Lambda reports it
+     * in CodeSha256. Reading and hashing it blocks, so it is done before the
+     * asynchronous calls that deploy it.
+     */
+    public static final class FunctionZip {
+
+        private final byte[] content;
+        private final String codeSha256;
+
+        private FunctionZip(byte[] content) {
+            this.content = content;
+            this.codeSha256 = Base64.getEncoder().encodeToString(Utils.sha256(content));
+        }
+
+        public static FunctionZip read(String zipFilePath) {
+            return new FunctionZip(readZipFile(zipFilePath));
+        }
+
+        public String getCodeSha256() {
+            return codeSha256;
+        }
+    }
+
     private final LambdaClient lambdaClient;
+    private final LambdaAsyncClient lambdaAsyncClient;
     private final String region;
     private final String accountId;
 
-    public LambdaService(LambdaClient lambdaClient, String region, String accountId) {
+    public LambdaService(LambdaClient lambdaClient, LambdaAsyncClient lambdaAsyncClient, String region,
+            String accountId) {
         this.lambdaClient = lambdaClient;
+        this.lambdaAsyncClient = lambdaAsyncClient;
         this.region = region;
         this.accountId = accountId;
     }
 
+    /**
+     * @return the ARN the Lambda function of the given ontology function has,
+     *         once it is deployed
+     */
+    public String functionArn(String functionName) {
+        return "arn:aws:lambda:" + this.region + ":" + accountId + ":function:" + Constants.LAMBDA_FUNCTION_PREFIX
+                + functionName;
+    }
+
     public String uploadLambda(ServiceFunction function, String zipFilePath, String roleArn, List<String> layerArns) {
-        Path path = Paths.get(zipFilePath);
+        CreateFunctionResponse response = lambdaClient
+                .createFunction(createFunctionRequest(function, readZipFile(zipFilePath), roleArn, layerArns));
+        return response.functionArn();
+    }
 
-        String runtime = (function.config.runtime != null) ? function.config.runtime : Constants.LAMBDA_RUNTIME;
-        Integer memorySize = (function.config.memory != null) ? function.config.memory : 128; // Default 128 MB
-        Integer timeout = (function.config.timeout != null) ? function.config.timeout : 3; // Default 3 seconds
+    private static CreateFunctionRequest createFunctionRequest(ServiceFunction function, byte[] code,
+            String roleArn, List<String> layerArns) {
+        return CreateFunctionRequest.builder()
+                .functionName(Constants.LAMBDA_FUNCTION_PREFIX + function.name)
+                .role(roleArn)
+                .layers(layerArns)
+                .handler(handler(function))
+                .runtime(runtime(function))
+                .memorySize(memorySize(function))
+                .timeout(timeout(function))
+                .code(software.amazon.awssdk.services.lambda.model.FunctionCode.builder()
+                        .zipFile(SdkBytes.fromByteArray(code))
+                        .build())
+                .build();
+    }
 
-        try {
-            SdkBytes lambdaFunctionCode = SdkBytes.fromByteArray(Files.readAllBytes(path));
-            CreateFunctionRequest request = CreateFunctionRequest.builder()
-                    .functionName(Constants.LAMBDA_FUNCTION_PREFIX + function.name)
+    /**
+     * Creates the Lambda function, or brings an existing one up to date. Its
+     * code is only uploaded if the SHA-256 of the zip file differs from the
+     * CodeSha256 of the deployed function, and its configuration only updated
+     * if it differs.
+     *
+     * @param zip the zip file, read and hashed before
+     * @return the ARN of the Lambda function and whether it was created
+     */
+    public CompletableFuture<LambdaDeployment> deployLambdaAsync(ServiceFunction function, FunctionZip zip,
+            String roleArn, List<String> layerArns) {
+        String functionName = Constants.LAMBDA_FUNCTION_PREFIX + function.name;
+
+        return lambdaAsyncClient.getFunctionConfiguration(GetFunctionConfigurationRequest.builder()
+                .functionName(functionName)
+                .build()).handle((deployed, failure) -> {
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    if (cause instanceof ResourceNotFoundException) {
+                        CreateFunctionRequest request = createFunctionRequest(function, zip.content, roleArn,
+                                layerArns);
+                        return AwsRetries
+                                .withRetries(() -> lambdaAsyncClient.createFunction(request),
+                                        LambdaService::isRoleNotReady)
+                                .thenApply(response -> new LambdaDeployment(response.functionArn(), true));
+                    }
+                    if (cause != null) {
+                        throw new CompletionException(cause);
+                    }
+                    return updateLambdaAsync(function, deployed, zip, roleArn, layerArns);
+                }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<LambdaDeployment> updateLambdaAsync(ServiceFunction function,
+            GetFunctionConfigurationResponse deployed, FunctionZip zip, String roleArn, List<String> layerArns) {
+        String functionName = deployed.functionName();
+        boolean codeChanged = !zip.codeSha256.equals(deployed.codeSha256());
+        List<String> deployedLayerArns = deployed.layers().stream().map(Layer::arn).collect(Collectors.toList());
+        boolean configurationChanged = !roleArn.equals(deployed.role())
+                || !handler(function).equals(deployed.handler())
+                || !runtime(function).equals(deployed.runtimeAsString())
+                || !memorySize(function).equals(deployed.memorySize())
+                || !timeout(function).equals(deployed.timeout())
+                || !layerArns.equals(deployedLayerArns);
+
+        // Lambda rejects an update while the previous one is still in progress
+        CompletableFuture<?> updated = waitUntilUpdated(functionName);
+        if (codeChanged) {
+            updated = updated.thenCompose(ignored -> lambdaAsyncClient.updateFunctionCode(
+                    UpdateFunctionCodeRequest.builder()
+                            .functionName(functionName)
+                            .zipFile(SdkBytes.fromByteArray(zip.content))
+                            .build()))
+                    .thenCompose(ignored -> waitUntilUpdated(functionName));
+        }
+        if (configurationChanged) {
+            UpdateFunctionConfigurationRequest request = UpdateFunctionConfigurationRequest.builder()
+                    .functionName(functionName)
                     .role(roleArn)
                     .layers(layerArns)
-                    .handler(function.name + ".handler")
-                    .runtime(runtime)
-                    .memorySize(memorySize)
-                    .timeout(timeout)
-                    .code(software.amazon.awssdk.services.lambda.model.FunctionCode.builder()
-                            .zipFile(lambdaFunctionCode)
-                            .build())
+                    .handler(handler(function))
+                    .runtime(runtime(function))
+                    .memorySize(memorySize(function))
+                    .timeout(timeout(function))
                     .build();
-            CreateFunctionResponse response = lambdaClient.createFunction(request);
-            return response.functionArn();
+            updated = updated.thenCompose(ignored -> AwsRetries.withRetries(
+                    () -> lambdaAsyncClient.updateFunctionConfiguration(request), LambdaService::isRoleNotReady));
+        }
+        return updated.thenApply(ignored -> {
+            if (!codeChanged && !configurationChanged) {
+                System.out.println("Function " + function.name + " is unchanged, skipped the upload");
+            } else {
+                System.out.println("Updated " + (codeChanged ? "code" : "")
+                        + (codeChanged && configurationChanged ? " and " : "")
+                        + (configurationChanged ? "configuration" : "") + " of function " + function.name);
+            }
+            return new LambdaDeployment(deployed.functionArn(), false);
+        });
+    }
 
+    /**
+     * @return true if Lambda rejected a role that IAM has not yet propagated,
+     *         which resolves within seconds of creating the role
+     */
+    private static boolean isRoleNotReady(Throwable failure) {
+        return failure instanceof InvalidParameterValueException && failure.getMessage() != null
+                && failure.getMessage().contains("cannot be assumed");
+    }
+
+    private CompletableFuture<?> waitUntilUpdated(String functionName) {
+        return lambdaAsyncClient.waiter().waitUntilFunctionUpdatedV2(GetFunctionRequest.builder()
+                .functionName(functionName)
+                .build());
+    }
+
+    private static byte[] readZipFile(String zipFilePath) {
+        try {
+            return Files.readAllBytes(Paths.get(zipFilePath));
         } catch (IOException e) {
             e.printStackTrace(); // Consider proper error handling or logging here
             throw new RuntimeException("Error creating Lambda function: " + e.getMessage(), e);
         }
     }
 
+    private static String handler(ServiceFunction function) {
+        return function.name + ".handler";
+    }
+
+    private static String runtime(ServiceFunction function) {
+        return (function.config.runtime != null) ? function.config.runtime : Constants.LAMBDA_RUNTIME;
+    }
+
+    private static Integer memorySize(ServiceFunction function) {
+        return (function.config.memory != null) ? function.config.memory : Constants.LAMBDA_DEFAULT_MEMORY;
+    }
+
+    private static Integer timeout(ServiceFunction function) {
+        return (function.config.timeout != null) ? function.config.timeout : Constants.LAMBDA_DEFAULT_TIMEOUT;
+    }
+
     public String uploadLambda(ServiceFunction function, String zipFilePath, String roleArn) {
         return uploadLambda(function, zipFilePath, roleArn, Collections.emptyList());
     }
@@ -81,6 +267,12 @@ public class LambdaService {
         lambdaClient.deleteFunction(request);
     }
 
+    public CompletableFuture<Void> deleteLambdaAsync(String functionName) {
+        return AwsRetries.withThrottlingRetries(() -> lambdaAsyncClient.deleteFunction(DeleteFunctionRequest.builder()
+                .functionName(functionName)
+                .build())).thenApply(response -> null);
+    }
+
     public void addLambdaInvokePermission(String lambdaArn, String apiId, String resourcePath, String httpMethod) {
         lambdaClient.addPermission(builder -> builder
                 .functionName(lambdaArn)
@@ -93,6 +285,35 @@ public class LambdaService {
                                 + resourcePath));
     }
 
+    /**
+     * Allows every method and resource of the API, in any stage, to invoke the
+     * Lambda function, with a single statement. A statement for a former API is
+     * replaced.
+     */
+    public CompletableFuture<Void> addApiInvokePermissionAsync(String lambdaArn, String apiId) {
+        AddPermissionRequest request = AddPermissionRequest.builder()
+                .functionName(lambdaArn)
+                .statementId("ApiGateway-Invoke")
+                .action("lambda:InvokeFunction")
+                .principal("apigateway.amazonaws.com")
+                .sourceArn("arn:aws:execute-api:" + this.region + ":" + accountId + ":" + apiId + "/*")
+                .build();
+        return lambdaAsyncClient.addPermission(request).handle((response, failure) -> {
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof ResourceConflictException) {
+                return lambdaAsyncClient.removePermission(RemovePermissionRequest.builder()
+                        .functionName(request.functionName())
+                        .statementId(request.statementId())
+                        .build())
+                        .thenCompose(removed -> lambdaAsyncClient.addPermission(request));
+            }
+            if (cause != null) {
+                throw new CompletionException(cause);
+            }
+            return CompletableFuture.completedFuture(response);
+        }).thenCompose(Function.identity()).thenApply(response -> null);
+    }
+
     /**
      * Creates a Lambda Layer with the given libraries, which can then be used by
      * Lambda functions.
@@ -104,30 +325,93 @@ public class LambdaService {
      * @return The ARN of the created Lambda Layer version.
      */
     public String createLayer(String layerName, String zipFilePath, String runtime) {
-        Path path = Paths.get(zipFilePath);
+        byte[] content = readLayerZip(zipFilePath);
+        PublishLayerVersionResponse response = lambdaClient
+                .publishLayerVersion(publishLayerVersionRequest(layerName, content, Utils.sha256Hex(content), runtime));
 
-        try {
-            SdkBytes layerCode = SdkBytes.fromByteArray(Files.readAllBytes(path));
+        return response.layerArn() + ":" + response.version();
+    }
 
-            PublishLayerVersionRequest request = PublishLayerVersionRequest.builder()
-                    .layerName(layerName)
-                    .description("Lambda Layer for " + layerName)
-                    .content(LayerVersionContentInput.builder()
-                            .zipFile(layerCode)
-                            .build())
-                    .compatibleRuntimesWithStrings(runtime)
-                    .build();
+    /**
+     * Looks up the version of the Lambda Layer with the same content as a zip
+     * file. Versions are identified by the SHA-256 of their zip file, which is
+     * recorded in their description, so an unchanged layer is neither read into
+     * memory nor uploaded again.
+     *
+     * @param sha256Hex the SHA-256 of the zip file (see
+     *                  {@link #layerSha256(String)})
+     * @return The ARN of the Lambda Layer version, or null if there is none.
+     */
+    public CompletableFuture<String> findLayerVersionAsync(String layerName, String sha256Hex, String runtime) {
+        String description = layerDescription(layerName, sha256Hex);
+        List<LayerVersionsListItem> versions = Collections.synchronizedList(new ArrayList<>());
+        return lambdaAsyncClient.listLayerVersionsPaginator(ListLayerVersionsRequest.builder()
+                .layerName(layerName)
+                .compatibleRuntime(runtime)
+                .build())
+                .layerVersions()
+                .subscribe(versions::add)
+                .thenApply(done -> {
+                    for (LayerVersionsListItem version : versions) {
+                        if (description.equals(version.description())) {
+                            System.out.println("Layer " + layerName + " is unchanged, reusing version "
+                                    + version.version());
+                            return version.layerVersionArn();
+                        }
+                    }
+                    return null;
+                });
+    }
 
-            PublishLayerVersionResponse response = lambdaClient.publishLayerVersion(request);
+    /**
+     * Like {@link #createLayer(String, String, String)}, but with the async
+     * client and the zip file read and hashed before, so the call does not
+     * block.
+     */
+    public CompletableFuture<String> publishLayerAsync(String layerName, byte[] content, String sha256Hex,
+            String runtime) {
+        return lambdaAsyncClient.publishLayerVersion(publishLayerVersionRequest(layerName, content, sha256Hex, runtime))
+                .thenApply(response -> response.layerArn() + ":" + response.version());
+    }
 
-            return response.layerArn() + ":" + response.version();
+    /**
+     * @return the SHA-256 of the zip file of a layer, computed without reading
+     *         the file into memory
+     */
+    public static String layerSha256(String zipFilePath) {
+        try {
+            return Utils.sha256Hex(Paths.get(zipFilePath));
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error creating Lambda Layer: " + e.getMessage(), e);
+        }
+    }
 
+    public static byte[] readLayerZip(String zipFilePath) {
+        try {
+            return Files.readAllBytes(Paths.get(zipFilePath));
         } catch (IOException e) {
             e.printStackTrace();
             throw new RuntimeException("Error creating Lambda Layer: " + e.getMessage(), e);
         }
     }
 
+    private static String layerDescription(String layerName, String sha256Hex) {
+        return "Lambda Layer for " + layerName + " (sha256:" + sha256Hex + ")";
+    }
+
+    private static PublishLayerVersionRequest publishLayerVersionRequest(String layerName, byte[] content,
+            String sha256Hex, String runtime) {
+        return PublishLayerVersionRequest.builder()
+                .layerName(layerName)
+                .description(layerDescription(layerName, sha256Hex))
+                .content(LayerVersionContentInput.builder()
+                        .zipFile(SdkBytes.fromByteArray(content))
+                        .build())
+                .compatibleRuntimesWithStrings(runtime)
+                .build();
+    }
+
     /**
      * Completely deletes all versions of a Lambda Layer.
      *
@@ -140,12 +424,13 @@ public class LambdaService {
                     .layerName(layerName)
                     .build();
 
-            ListLayerVersionsResponse listResponse = lambdaClient.listLayerVersions(listRequest);
-            List<LayerVersionsListItem> versions = listResponse.layerVersions();
+            List<Long> versions = lambdaClient.listLayerVersionsPaginator(listRequest).layerVersions().stream()
+                    .map(LayerVersionsListItem::version)
+                    .collect(Collectors.toList());
 
             // Delete each version of the layer
-            for (LayerVersionsListItem version : versions) {
-                deleteLayerVersion(layerName, version.version());
+            for (long version : versions) {
+                deleteLayerVersion(layerName, version);
             }
 
         } catch (LambdaException e) {
@@ -154,6 +439,34 @@ public class LambdaService {
         }
     }
 
+    /**
+     * Lists all versions of a Lambda Layer with the async client.
+     *
+     * @param layerName The name of the Lambda Layer.
+     * @return The version numbers of the layer.
+     */
+    public CompletableFuture<List<Long>> listLayerVersionsAsync(String layerName) {
+        List<Long> versions = Collections.synchronizedList(new ArrayList<>());
+        return lambdaAsyncClient.listLayerVersionsPaginator(ListLayerVersionsRequest.builder()
+                .layerName(layerName)
+                .build())
+                .layerVersions()
+                .subscribe(version -> versions.add(version.version()))
+                .thenApply(done -> versions);
+    }
+
+    /**
+     * Like {@link #deleteLayerVersion(String, long)}, but with the async client.
+     */
+    public CompletableFuture<Void> deleteLayerVersionAsync(String layerName, long versionNumber) {
+        return AwsRetries.withThrottlingRetries(() -> lambdaAsyncClient.deleteLayerVersion(
+                DeleteLayerVersionRequest.builder()
+                        .layerName(layerName)
+                        .versionNumber(versionNumber)
+                        .build()))
+                .thenApply(response -> null);
+    }
+
     /**
      * Deletes a specific version of a Lambda Layer.
      *
@@ -177,16 +490,15 @@ public class LambdaService {
     }
 
     public List<String> listLambdaFunctionsByPrefix(String prefix) {
-        ListFunctionsResponse response = lambdaClient.listFunctions();
-        return response.functions().stream()
+        // the paginators follow the next pages, a single call returns at most 50 items
+        return lambdaClient.listFunctionsPaginator().functions().stream()
                 .filter(f -> f.functionName().startsWith(prefix))
                 .map(FunctionConfiguration::functionName)
                 .collect(Collectors.toList());
     }
 
     public List<String> listLayersByPrefix(String prefix) {
-        ListLayersResponse response = lambdaClient.listLayers();
-        return response.layers().stream()
+        return lambdaClient.listLayersPaginator().layers().stream()
                 .filter(f -> f.layerName().startsWith(prefix))
                 .map(LayersListItem::layerName)
                 .collect(Collectors.toList());
@@ -0,0 +1,125 @@
+package io.github.raphaelmayer.services;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import io.github.raphaelmayer.models.AppConfig;
+import io.github.raphaelmayer.models.Ontology;
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.pathfinding.CompiledOntology;
+import io.github.raphaelmayer.services.pathfinding.MacroLibrary;
+import io.github.raphaelmayer.services.pathfinding.SearchStrategies;
+import io.github.raphaelmayer.services.pathfinding.ServicePathCache;
+import io.github.raphaelmayer.util.Constants;
+import io.github.raphaelmayer.util.JsonUtils;
+
+/**
+ * Plans the service paths for a whole batch of transformations in one JVM. The
+ * ontology is parsed and compiled once and the searches run concurrently. The
+ * results are printed and written to a JSON file; a transformation whose search
+ * fails gets an error instead of a path.
+ */
+public class BatchOrchestrator {
+
+    private final AppConfig appConfig;
+    private final CompiledOntology ontology;
+    private final PathfindingService pfs;
+
+    public BatchOrchestrator(final AppConfig appConfig) {
+        this.appConfig = appConfig;
+        this.ontology = CompiledOntology.compile(JsonUtils.parseFile(Constants.ONTOLOGY_PATH, Ontology.class));
+        this.pfs = new PathfindingService(this.ontology, SearchStrategies.fromName(appConfig.getSearchStrategy(),
+                appConfig.getNodeBudget(), appConfig.getBeamWidth(), appConfig.getThreads()));
+        if (appConfig.isPathCache()) {
+            this.pfs.setPathCache(new ServicePathCache(this.ontology, Constants.PATH_CACHE_DIRECTORY,
+                    Constants.PATH_CACHE_CAPACITY));
+            this.pfs.setMacroLibrary(new MacroLibrary(Constants.MACRO_PATH, Constants.MACRO_MIN_FREQUENCY,
+                    Constants.MACRO_MAX_LENGTH, Constants.MACRO_LIMIT));
+        }
+        this.pfs.setVerbose(appConfig.isDebug());
+    }
+
+    public void run() {
+        List<String> sources = new ArrayList<>();
+        List<Transformation> transformations = readTransformations(appConfig.getBatchSource(), sources);
+        System.out.println("Planning " + transformations.size() + " transformations with "
+                + appConfig.getThreads() + " threads...");
+
+        ForkJoinPool pool = new ForkJoinPool(appConfig.getThreads());
+        long start = System.nanoTime();
+        List<Map<String, Object>> results = new ArrayList<>();
+        int failed = 0;
+        try {
+            List<CompletableFuture<List<ServiceFunction>>> servicePaths = pfs.planServicePaths(transformations,
+                    pool);
+            for (int i = 0; i < transformations.size(); i++) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("source", sources.get(i));
+                result.put("input", transformations.get(i).input);
+                result.put("output", transformations.get(i).output);
+                try {
+                    List<ServiceFunction> servicePath = servicePaths.get(i).join();
+                    List<String> names = new ArrayList<>();
+                    for (ServiceFunction function : servicePath) {
+                        names.add(function.name);
+                    }
+                    System.out.println(sources.get(i) + ": " + servicePath);
+                    result.put("path", names);
+                } catch (CompletionException e) {
+                    // one broken transformation must not cost the paths of the others
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println(sources.get(i) + ": Error: " + cause);
+                    result.put("error", cause.toString());
+                    failed++;
+                }
+                results.add(result);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (pfs.getMacroLibrary() != null) {
+            pfs.getMacroLibrary().save();
+        }
+        System.out.println("Planned " + transformations.size() + " transformations in " + millis + " ms"
+                + (failed > 0 ? ", " + failed + " failed." : "."));
+
+        String name = appConfig.getWorkflowName() != null ? appConfig.getWorkflowName() : "batch";
+        JsonUtils.writeFile(JsonUtils.convertToJsonNode(results), name + "-paths.json");
+    }
+
+    /**
+     * Reads either every .json file of a directory (one transformation each) or a
+     * JSON Lines file (one transformation per line).
+     */
+    private List<Transformation> readTransformations(String source, List<String> sources) {
+        File file = new File(source);
+        List<Transformation> transformations = new ArrayList<>();
+        if (file.isDirectory()) {
+            File[] inputFiles = file.listFiles((dir, fileName) -> fileName.endsWith(".json"));
+            if (inputFiles == null) {
+                throw new RuntimeException("Error: Could not list batch directory " + source);
+            }
+            Arrays.sort(inputFiles);
+            for (File inputFile : inputFiles) {
+                transformations.add(JsonUtils.parseFile(inputFile.getPath(), Transformation.class));
+                sources.add(inputFile.getPath());
+            }
+        } else {
+            List<Integer> lineNumbers = new ArrayList<>();
+            transformations.addAll(JsonUtils.parseJsonLines(source, Transformation.class, lineNumbers));
+            for (int line : lineNumbers) {
+                sources.add(source + "#" + line);
+            }
+        }
+        return transformations;
+    }
+}
@@ -6,6 +6,11 @@ import io.github.raphaelmayer.models.AppConfig;
 import io.github.raphaelmayer.models.Ontology;
 import io.github.raphaelmayer.models.ServiceFunction;
 import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.pathfinding.CompiledOntology;
+import io.github.raphaelmayer.services.pathfinding.MacroLibrary;
+import io.github.raphaelmayer.services.pathfinding.SearchResult;
+import io.github.raphaelmayer.services.pathfinding.SearchStrategies;
+import io.github.raphaelmayer.services.pathfinding.ServicePathCache;
 import io.github.raphaelmayer.util.Constants;
 import io.github.raphaelmayer.util.JsonUtils;
 
@@ -28,7 +33,17 @@ public class CompositeBaaSOrchestrator {
         String region = (String) transformation.input.get("region");
         System.out.println(this.transformation.toString());
 
-        this.pfs = new PathfindingService(this.ontology);
+        // compile the lookup indexes once, the planner only works on this snapshot
+        CompiledOntology compiledOntology = CompiledOntology.compile(this.ontology);
+        this.pfs = new PathfindingService(compiledOntology, SearchStrategies.fromName(appConfig.getSearchStrategy(),
+                appConfig.getNodeBudget(), appConfig.getBeamWidth(), appConfig.getThreads()));
+        if (appConfig.isPathCache()) {
+            this.pfs.setPathCache(new ServicePathCache(compiledOntology, Constants.PATH_CACHE_DIRECTORY,
+                    Constants.PATH_CACHE_CAPACITY));
+            this.pfs.setMacroLibrary(new MacroLibrary(Constants.MACRO_PATH, Constants.MACRO_MIN_FREQUENCY,
+                    Constants.MACRO_MAX_LENGTH, Constants.MACRO_LIMIT));
+        }
+        this.pfs.setVerbose(appConfig.isDebug());
         // no need for a region, if user does not deploy
         this.ds = new DeploymentService(this.ontology, appConfig.isDeploy() ? region : "nodeploy"); 
         this.fcs = new FcGenerationService(this.ontology);
@@ -38,13 +53,27 @@ public class CompositeBaaSOrchestrator {
         String wfName = this.appConfig.getWorkflowName();
 
         // path finding
-        List<ServiceFunction> servicePath = this.pfs.findServicePath(this.transformation);
+        SearchResult result = this.pfs.findServicePathResult(this.transformation);
+        List<ServiceFunction> servicePath = result.getPath();
         System.out.println("final service path: " + servicePath + "\n");
+        if (this.pfs.getMacroLibrary() != null) {
+            this.pfs.getMacroLibrary().save();
+        }
+        if (this.appConfig.isStats()) {
+            JsonUtils.writeFile(JsonUtils.convertToJsonNode(result.getStats()), wfName + "-stats.json");
+        }
+        // reject infeasible requests before anything is deployed
+        if (!result.isFound()) {
+            System.err.println("Error: No service path satisfies the transformation and its constraints. "
+                    + "Nothing was deployed or generated.");
+            return;
+        }
 
         // function deployment
         List<String> functionUrls;
         if (this.appConfig.isDeploy()) {
-            functionUrls = this.ds.setupAndDeploy(servicePath);
+            functionUrls = this.appConfig.isReconcile() ? this.ds.reconcileAndDeploy(servicePath)
+                    : this.ds.setupAndDeploy(servicePath);
             System.out.println("URL's: " + functionUrls + "\n");
             fcs.createTypeMappingsFile(wfName + "-typemappings.json", servicePath, functionUrls);
         }
@@ -20,11 +20,20 @@ public class DeploymentService {
     }
 
     public List<String> setupAndDeploy(List<ServiceFunction> servicePath) {
-        awsManager.resetEnvironment();
+        // Keep the functions and layers of the path, so unchanged ones are not uploaded again
+        awsManager.resetEnvironment(servicePath);
         List<String> functionUrls = awsManager.setupEnvironment(servicePath);
         return functionUrls;
     }
 
+    /**
+     * Deploys the service path by changing only what differs from the last
+     * deployment, instead of resetting the environment first.
+     */
+    public List<String> reconcileAndDeploy(List<ServiceFunction> servicePath) {
+        return awsManager.reconcileEnvironment(servicePath);
+    }
+
     public void resetEnvironment() {
         awsManager.resetEnvironment();
     }
@@ -1,28 +1,60 @@
 package io.github.raphaelmayer.services;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 import io.github.raphaelmayer.models.Ontology;
+import io.github.raphaelmayer.models.OntologyChange;
 import io.github.raphaelmayer.models.ServiceFunction;
 import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.pathfinding.BreadthFirstSearch;
+import io.github.raphaelmayer.services.pathfinding.CompiledOntology;
+import io.github.raphaelmayer.services.pathfinding.KShortestPathIterator;
+import io.github.raphaelmayer.services.pathfinding.MacroLibrary;
+import io.github.raphaelmayer.services.pathfinding.MacroSearch;
+import io.github.raphaelmayer.services.pathfinding.MinCostSearch;
+import io.github.raphaelmayer.services.pathfinding.Objective;
+import io.github.raphaelmayer.services.pathfinding.PlanningConstraints;
+import io.github.raphaelmayer.services.pathfinding.SearchProblem;
+import io.github.raphaelmayer.services.pathfinding.SearchResult;
+import io.github.raphaelmayer.services.pathfinding.SearchStats;
+import io.github.raphaelmayer.services.pathfinding.SearchStrategy;
+import io.github.raphaelmayer.services.pathfinding.ServicePathCache;
 
 /*
  * Returns a List<ServiceFunction> instead of List<String>. This class is not in use right now.
  */
 public class PathfindingService {
 
-    private final Ontology ontology;
+    // replaced as a whole when the ontology changes, every request plans with the one it started with
+    private volatile CompiledOntology ontology;
+    private final SearchStrategy searchStrategy;
+    private volatile SearchStats lastSearchStats = new SearchStats();
+    private ServicePathCache pathCache;
+    private MacroLibrary macroLibrary;
+    private boolean verbose;
+    // planning requests currently running, by canonical key
+    private final Map<String, CompletableFuture<List<ServiceFunction>>> inFlight = new ConcurrentHashMap<>();
 
     public PathfindingService(Ontology ontology) {
+        this(CompiledOntology.compile(ontology), new BreadthFirstSearch());
+    }
+
+    public PathfindingService(Ontology ontology, SearchStrategy searchStrategy) {
+        this(CompiledOntology.compile(ontology), searchStrategy);
+    }
+
+    public PathfindingService(CompiledOntology ontology, SearchStrategy searchStrategy) {
         this.ontology = ontology;
+        this.searchStrategy = searchStrategy;
     }
 
     /**
@@ -35,192 +67,329 @@ public class PathfindingService {
      *         transformation.
      */
     public List<ServiceFunction> findServicePath(Transformation transformation) {
-        Map<String, Object> inputState = transformation.input;
-        Map<String, Object> targetState = transformation.output;
+        return findServicePathResult(transformation).getPath();
+    }
 
-        // Perform BFS to find the service path
-        List<ServiceFunction> servicePath = bfsServicePath(inputState, targetState);
+    /**
+     * Like {@link #findServicePath(Transformation)}, but returns the path together
+     * with the statistics of the search. Paths taken from the cache come with
+     * empty statistics.
+     */
+    public SearchResult findServicePathResult(Transformation transformation) {
+        CompiledOntology ontology = this.ontology;
+        if (pathCache == null) {
+            return planServicePath(ontology, transformation);
+        }
+        String key = ServicePathCache.canonicalKey(ontology, transformation, searchStrategy.getName());
+        List<ServiceFunction> cachedPath = pathCache.get(key);
+        if (cachedPath != null) {
+            System.out.println("Using cached service path.");
+            return SearchResult.found(cachedPath, new SearchStats());
+        }
+        SearchResult result = planServicePath(ontology, transformation);
+        // results cut short by a search budget may improve with another budget, and
+        // the cache only holds a single path, not a Pareto front. A hit counts as found,
+        // so proofs that no path exists are planned again instead
+        if (result.isFound() && result.isOptimal() && result.getAlternatives().isEmpty()) {
+            pathCache.put(key, searchStrategy.getName(), transformation, result.getPath(), ontology);
+        }
+        return result;
+    }
 
-        // Add the 'analyse' function to the beginning of the service path
-        ServiceFunction analyseFunction = ontology.getFunction("analyse");
-        if (analyseFunction != null) {
-            servicePath.add(0, analyseFunction);
+    /**
+     * Applies a change to the ontology of the running service. The indexes are
+     * updated incrementally (see {@link CompiledOntology#apply(OntologyChange)}),
+     * and only the cached paths the change may affect are dropped (see
+     * {@link ServicePathCache#update(CompiledOntology, OntologyChange)}); those
+     * of this service's strategy are planned again in the background, so the
+     * change does not wait for their searches. Requests running meanwhile finish
+     * with the ontology they started with.
+     *
+     * @return the number of cached paths planned again
+     * @throws IllegalArgumentException if the change does not fit the ontology
+     */
+    public synchronized int applyOntologyChange(OntologyChange change) {
+        CompiledOntology updated = ontology.apply(change);
+        List<ServicePathCache.CacheEntry> dropped = pathCache == null ? new ArrayList<>()
+                : pathCache.update(updated, change);
+        this.ontology = updated;
+
+        int replanned = 0;
+        for (ServicePathCache.CacheEntry entry : dropped) {
+            if (searchStrategy.getName().equals(entry.strategy)) {
+                planAsync(entry.transformation(), ForkJoinPool.commonPool());
+                replanned++;
+            }
         }
+        System.out.println("Applied " + change + ", planning " + replanned + " of " + dropped.size()
+                + " affected cached service paths again.");
+        return replanned;
+    }
 
-        // Add split / merge functions if applicable
-        addSplitAndMergeFunctions(servicePath, inputState, targetState);
+    /**
+     * @return the compiled ontology the service currently plans with
+     */
+    public CompiledOntology getOntology() {
+        return ontology;
+    }
 
-        return servicePath;
+    /**
+     * Finds the service paths of many transformations concurrently on the common
+     * fork-join pool.
+     *
+     * @see #findServicePaths(Collection, ExecutorService)
+     */
+    public List<List<ServiceFunction>> findServicePaths(Collection<Transformation> transformations) {
+        return findServicePaths(transformations, ForkJoinPool.commonPool());
     }
 
     /**
-     * Implements the BFS algorithm to find the shortest valid service path.
+     * Finds the service paths of many transformations concurrently. All searches
+     * share the immutable compiled ontology. Identical transformations (by their
+     * canonical key) are only planned once while a search for them is running,
+     * also across concurrent calls.
      *
-     * @param inputState  The initial input state.
-     * @param targetState The target output state.
-     * @return The service path or an empty list if no path exists.
+     * @param transformations The transformations to plan.
+     * @param executor        The executor running the searches.
+     * @return The service paths in the order of the transformations.
      */
-    private List<ServiceFunction> bfsServicePath(Map<String, Object> inputState, Map<String, Object> targetState) {
-        Queue<Node> queue = new LinkedList<>();
-        Set<Map<String, Object>> visited = new HashSet<>();
-
-        // Start the search from the initial state
-        queue.add(new Node(inputState, new ArrayList<>()));
-
-        while (!queue.isEmpty()) {
-            Node currentNode = queue.poll();
-            Map<String, Object> currentState = currentNode.state;
-            List<ServiceFunction> currentPath = currentNode.path;
-            System.out.println("\n" + currentNode);
-
-            // Check if the current state satisfies the target
-            if (isTargetState(currentState, targetState)) {
-                System.out.println("Found a valid path.");
-                return currentPath; // Found a valid path!
+    public List<List<ServiceFunction>> findServicePaths(Collection<Transformation> transformations,
+            ExecutorService executor) {
+        List<List<ServiceFunction>> servicePaths = new ArrayList<>();
+        for (CompletableFuture<List<ServiceFunction>> future : planServicePaths(transformations, executor)) {
+            try {
+                // callers may modify their path, so duplicates get their own copy
+                servicePaths.add(new ArrayList<>(future.join()));
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
             }
+        }
+        return servicePaths;
+    }
 
-            // Avoid revisiting the same state
-            if (visited.contains(currentState)) {
-                continue;
-            }
+    /**
+     * Starts the searches of many transformations concurrently, like
+     * {@link #findServicePaths(Collection, ExecutorService)}, but leaves waiting
+     * for them to the caller. A failed search only fails its own future.
+     *
+     * @return A future service path per transformation, in their order.
+     *         Identical transformations share a future, so the paths must not
+     *         be modified.
+     */
+    public List<CompletableFuture<List<ServiceFunction>>> planServicePaths(Collection<Transformation> transformations,
+            ExecutorService executor) {
+        List<CompletableFuture<List<ServiceFunction>>> futures = new ArrayList<>();
+        for (Transformation transformation : transformations) {
+            futures.add(planAsync(transformation, executor));
+        }
+        return futures;
+    }
 
-            visited.add(currentState);
-            // Explore the services to find the next valid state transitions
-            for (ServiceFunction service : ontology.functions) {
-                // Apply the service and generate the next state if applicable
-                if (canApplyService(service, currentState)) {
-                    Map<String, Object> nextState = applyService(service, currentState, targetState);
-                    System.out.println("Can apply " + service.name + ", new state: " + nextState);
-
-                    // If this state has not been visited yet, enqueue it
-                    if (!visited.contains(nextState)) {
-                        List<ServiceFunction> newPath = new ArrayList<>(currentPath);
-                        newPath.add(service); // Add the service function object to the path
-                        queue.add(new Node(nextState, newPath));
-                    }
-                }
-            }
+    private CompletableFuture<List<ServiceFunction>> planAsync(Transformation transformation,
+            ExecutorService executor) {
+        String key;
+        try {
+            key = ServicePathCache.canonicalKey(ontology, transformation, searchStrategy.getName());
+        } catch (RuntimeException e) {
+            // e.g. a transformation without input, it fails like its search would
+            return CompletableFuture.failedFuture(e);
         }
+        CompletableFuture<List<ServiceFunction>> created = new CompletableFuture<>();
+        CompletableFuture<List<ServiceFunction>> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            return running;
+        }
+        executor.execute(() -> {
+            try {
+                created.complete(findServicePath(transformation));
+            } catch (RuntimeException e) {
+                created.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, created);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Uses a cache for service paths from now on, or disables caching if null.
+     */
+    public void setPathCache(ServicePathCache pathCache) {
+        this.pathCache = pathCache;
+    }
 
-        return new ArrayList<>(); // No valid path found
+    public ServicePathCache getPathCache() {
+        return pathCache;
     }
 
     /**
-     * Check if the current state matches the target state. All keys in the target
-     * state must match in the current state for this to be true.
+     * Records the sub-paths of every optimal service path found in the library
+     * from now on, and offers its macro-operators to strategies that support them
+     * (see {@link MacroSearch}). Disables macros if null.
      */
-    private boolean isTargetState(Map<String, Object> currentState, Map<String, Object> targetState) {
-        for (String key : targetState.keySet()) {
-            if (!Objects.equals(currentState.get(key), targetState.get(key))) {
-                return false;
-            }
+    public void setMacroLibrary(MacroLibrary macroLibrary) {
+        this.macroLibrary = macroLibrary;
+    }
+
+    public MacroLibrary getMacroLibrary() {
+        return macroLibrary;
+    }
+
+    /**
+     * Traces every expanded node and applied service on the console.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    private SearchResult planServicePath(CompiledOntology ontology, Transformation transformation) {
+        Map<String, Object> inputState = transformation.input;
+        Map<String, Object> targetState = transformation.output;
+
+        // Search for the service path, by default with BFS
+        SearchResult result = searchServicePath(ontology, inputState, targetState);
+        completeServicePath(ontology, result.getPath(), inputState, targetState);
+        return result;
+    }
+
+    /**
+     * Adds the functions every workflow needs around the searched services.
+     */
+    private void completeServicePath(CompiledOntology ontology, List<ServiceFunction> servicePath,
+            Map<String, Object> inputState, Map<String, Object> targetState) {
+        // Add the 'analyse' function to the beginning of the service path
+        ServiceFunction analyseFunction = ontology.getFunction("analyse");
+        if (analyseFunction != null) {
+            servicePath.add(0, analyseFunction);
         }
-        return true;
+
+        // Add split / merge functions if applicable
+        addSplitAndMergeFunctions(ontology, servicePath, inputState, targetState);
     }
 
     /**
-     * Determines if a given service can be applied to the current state.
+     * Lazily enumerates distinct service paths for the transformation, shortest
+     * first, e.g. to fall back to another path when a deployed function is
+     * throttled. The first path is the one BFS finds; like the result of
+     * {@link #findServicePath(Transformation)}, every path includes the analyse,
+     * split and merge functions.
+     *
+     * The iterator keeps its search state between calls, so each further path
+     * costs a fraction of a new search. Its paths are not cached.
+     *
+     * @see KShortestPathIterator
      */
-    private boolean canApplyService(ServiceFunction service, Map<String, Object> currentState) {
-        for (String key : service.input.keySet()) {
-            // Ensure the current state matches the service's input requirements
-            if (!currentState.containsKey(key)
-                    || !((List<Object>) service.input.get(key)).contains(currentState.get(key))) {
-                return false;
+    public Iterator<List<ServiceFunction>> iterateServicePaths(Transformation transformation) {
+        CompiledOntology ontology = this.ontology;
+        KShortestPathIterator paths = new KShortestPathIterator(
+                createProblem(ontology, transformation.input, transformation.output));
+        return new Iterator<List<ServiceFunction>>() {
+            @Override
+            public boolean hasNext() {
+                return paths.hasNext();
             }
-        }
-        return true;
+
+            @Override
+            public List<ServiceFunction> next() {
+                List<ServiceFunction> servicePath = paths.next();
+                completeServicePath(ontology, servicePath, transformation.input, transformation.output);
+                return servicePath;
+            }
+        };
+    }
+
+    /**
+     * @return the counters of the most recent search, e.g. the number of expanded
+     *         nodes. With concurrent searches this is the one finished last.
+     */
+    public SearchStats getLastSearchStats() {
+        return lastSearchStats;
+    }
+
+    public SearchStrategy getSearchStrategy() {
+        return searchStrategy;
     }
 
     /**
-     * Applies a service to the current state and returns the resulting state.
+     * Runs the configured search strategy to find the shortest valid service path.
+     *
+     * @param inputState  The initial input state.
+     * @param targetState The target output state.
+     * @return The search result, its path is empty if no path was found.
      */
-    private Map<String, Object> applyService(ServiceFunction service, Map<String, Object> currentState,
+    private SearchResult searchServicePath(CompiledOntology ontology, Map<String, Object> inputState,
             Map<String, Object> targetState) {
-        Map<String, Object> nextState = new HashMap<>(currentState);
-
-        // Apply the transformation for each output key
-        for (String key : service.output.keySet()) {
-            // Update the current state with the service's output for this key
-            List<Object> outputValues = (List<Object>) service.output.get(key);
-            if (!outputValues.isEmpty()) {
-                // if the service can transform in one step, apply the final value for the key
-                if (outputValues.contains(targetState.get(key))) {
-                    nextState.put(key, targetState.get(key));
-                } else {
-                    // Apply the service's first possible output for this key (we're moving towards
-                    // target state incrementally)
-                    nextState.put(key, outputValues.get(0));
-                }
-            }
+        SearchProblem problem = createProblem(ontology, inputState, targetState);
+        if (verbose || !problem.isFeasible()) {
+            Map<String, String> violations = PlanningConstraints.fromInput(ontology, inputState).violations(ontology);
+            violations.forEach((name, violation) -> System.out
+                    .println("Excluded by the planning constraints: " + name + " (" + violation + ")"));
+        }
+        if (!problem.isFeasible()) {
+            System.out.println("Target state cannot be reached by any function.");
+            this.lastSearchStats = new SearchStats();
+            return SearchResult.notFound(lastSearchStats);
+        }
+
+        SearchResult result = searchStrategy.search(problem);
+        this.lastSearchStats = result.getStats();
+        // sub-optimal paths, e.g. found with macros, would reinforce themselves
+        if (macroLibrary != null && result.isFound() && result.isOptimal()) {
+            macroLibrary.record(result.getPath());
+        }
+        if (result.isBudgetExhausted()) {
+            System.out.println(result.isFound() ? "Node budget exhausted, completed the most promising path greedily."
+                    : "Node budget exhausted before a path was found.");
         }
+        System.out.println((result.isFound() ? "Found a valid path. " : "No valid path found. ")
+                + searchStrategy.getName() + " " + result.getStats()
+                + (result.isOptimal() ? "" : " (not provably optimal)"));
+        if (!result.getAlternatives().isEmpty()) {
+            System.out.println("Pareto front, fastest first:");
+            printEstimate(result.getPath());
+            result.getAlternatives().forEach(this::printEstimate);
+        } else if (result.isFound() && searchStrategy instanceof MinCostSearch) {
+            printEstimate(result.getPath());
+        }
+        return result;
+    }
 
-        return nextState;
+    private void printEstimate(List<ServiceFunction> path) {
+        System.out.println("  " + path + " estimated latency " + Objective.LATENCY.format(Objective.LATENCY.pathCost(path))
+                + ", price " + Objective.PRICE.format(Objective.PRICE.pathCost(path)));
     }
 
-    private void addSplitAndMergeFunctions(List<ServiceFunction> servicePath, Map<String, Object> inputState,
+    private SearchProblem createProblem(CompiledOntology ontology, Map<String, Object> inputState,
             Map<String, Object> targetState) {
+        SearchProblem problem = new SearchProblem(ontology, inputState, targetState,
+                PlanningConstraints.fromInput(ontology, inputState));
+        problem.setVerbose(verbose);
+        if (macroLibrary != null) {
+            problem.setMacros(macroLibrary.macros());
+        }
+        return problem;
+    }
+
+    private void addSplitAndMergeFunctions(CompiledOntology ontology, List<ServiceFunction> servicePath,
+            Map<String, Object> inputState, Map<String, Object> targetState) {
         // Get the input and output types
         String inputType = (String) inputState.get("type");
         String outputType = (String) targetState.get("type");
 
         // Determine if a split function is applicable
-        ServiceFunction splitFunction = findFunctionByType("Split", inputType);
+        ServiceFunction splitFunction = ontology.findFunctionByType("Split", inputType);
         if (splitFunction != null) {
             // If a split is needed, add it after the 'DistributeFiles' function
             servicePath.add(1, splitFunction);
 
             // If we split, we need to merge, so determine and add the merge function
-            ServiceFunction mergeFunction = findFunctionByType("Merge", outputType);
+            ServiceFunction mergeFunction = ontology.findFunctionByType("Merge", outputType);
             if (mergeFunction != null) {
                 servicePath.add(mergeFunction); // Add the merge function at the end
             }
         }
     }
-
-    private ServiceFunction findFunctionByType(String functionType, String dataType) {
-        for (ServiceFunction function : ontology.functions) {
-            if (function.type.equalsIgnoreCase(functionType)
-                    && ((List<String>) function.input.get("type")).contains(dataType)) {
-                return function;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Helper class to represent a node in the BFS traversal.
-     */
-    private static class Node {
-        Map<String, Object> state;
-        List<ServiceFunction> path;
-
-        Node(Map<String, Object> state, List<ServiceFunction> path) {
-            this.state = state;
-            this.path = path;
-        }
-
-        @Override
-        public int hashCode() {
-            return state.hashCode();
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null || getClass() != obj.getClass())
-                return false;
-            Node node = (Node) obj;
-            return Objects.equals(state, node.state); // Equality by state content
-        }
-
-        @Override
-        public String toString() {
-            return "Node{" +
-                    "state=" + state +
-                    ", path=" + path +
-                    '}';
-        }
-    }
 }
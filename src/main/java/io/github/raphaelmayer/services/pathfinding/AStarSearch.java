@@ -0,0 +1,90 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.Arrays;
+
+import io.github.raphaelmayer.util.LongHashSet;
+import io.github.raphaelmayer.util.LongIntHashMap;
+import io.github.raphaelmayer.util.LongMinHeap;
+
+/**
+ * A* search over hop counts. With an admissible and consistent heuristic the
+ * first goal taken from the open list is a shortest path, while states that
+ * cannot lead towards the target quickly are never expanded.
+ */
+public class AStarSearch implements SearchStrategy {
+
+    public static final String NAME = "astar";
+
+    private final Heuristic heuristic;
+
+    public AStarSearch(Heuristic heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    public AStarSearch() {
+        this(new MismatchedAttributesHeuristic());
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        SearchTree tree = new SearchTree();
+        LongMinHeap open = new LongMinHeap();
+        LongIntHashMap bestCost = new LongIntHashMap(Integer.MAX_VALUE);
+        LongHashSet closed = new LongHashSet();
+        SearchStats stats = new SearchStats();
+        int[] costs = new int[1024];
+        int[] applicable = new int[problem.operatorCount()];
+
+        int root = tree.add(problem.start(), SearchTree.ROOT, -1);
+        bestCost.put(problem.start(), 0);
+        open.add(LongMinHeap.entry(heuristic.estimate(problem, problem.start()), root));
+        stats.nodeStored();
+
+        while (!open.isEmpty()) {
+            int node = LongMinHeap.node(open.poll());
+            long state = tree.state(node);
+            if (!closed.add(state)) {
+                continue; // a cheaper copy of this state was expanded already
+            }
+            if (problem.isGoal(state)) {
+                return SearchResult.found(tree.path(node, problem), stats);
+            }
+            stats.nodeExpanded();
+
+            int cost = costs[node] + 1;
+            long started = System.nanoTime();
+            int count = problem.applicableOperators(state, applicable);
+            long applied = System.nanoTime();
+            stats.canApplyTime(applied - started);
+            stats.successorsGenerated(count);
+            for (int i = 0; i < count; i++) {
+                int op = applicable[i];
+                long nextState = problem.apply(op, state);
+                if (closed.contains(nextState) || bestCost.get(nextState) <= cost) {
+                    stats.duplicateSkipped();
+                    continue;
+                }
+                if (!problem.canReachGoal(nextState)) {
+                    continue;
+                }
+                bestCost.put(nextState, cost);
+                int next = tree.add(nextState, node, op);
+                if (next == costs.length) {
+                    costs = Arrays.copyOf(costs, costs.length << 1);
+                }
+                costs[next] = cost;
+                open.add(LongMinHeap.entry(cost + heuristic.estimate(problem, nextState), next));
+                stats.nodeStored();
+                stats.frontierSize(open.size());
+            }
+            stats.applyTime(System.nanoTime() - applied);
+        }
+
+        return SearchResult.notFound(stats);
+    }
+}
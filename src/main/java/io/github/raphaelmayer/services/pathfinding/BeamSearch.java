@@ -0,0 +1,148 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.util.LongHashSet;
+import io.github.raphaelmayer.util.LongMinHeap;
+
+/**
+ * Breadth-first beam search. Every level keeps only the most promising states
+ * (by heuristic, ties in generation order), so memory grows linearly with the
+ * depth instead of with the size of the state space. Only kept states count as
+ * visited, so a state dropped from one level can still be reached on another
+ * route. Once the search has kept as many states as its node budget allows, it
+ * completes the path of the most promising state of the last level greedily
+ * (see {@link GreedyCompletion}).
+ *
+ * If no level had to be cut down to the beam width, the search behaved like BFS
+ * and its result is optimal. Otherwise a found path may be longer than
+ * necessary, and a missing path does not prove that none exists.
+ */
+public class BeamSearch implements SearchStrategy {
+
+    public static final String NAME = "beam";
+
+    private final int width;
+    private final int nodeBudget;
+    private final Heuristic heuristic;
+
+    /**
+     * @param width      the number of states kept per level
+     * @param nodeBudget the number of distinct states the search may see
+     */
+    public BeamSearch(int width, int nodeBudget, Heuristic heuristic) {
+        this.width = width;
+        this.nodeBudget = nodeBudget;
+        this.heuristic = heuristic;
+    }
+
+    public BeamSearch(int width, int nodeBudget) {
+        this(width, nodeBudget, new MismatchedAttributesHeuristic());
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        SearchTree tree = new SearchTree();
+        LongHashSet visited = new LongHashSet();
+        // the successors of the current level, to keep each of them once
+        LongHashSet generated = new LongHashSet();
+        LongMinHeap ranking = new LongMinHeap();
+        SearchStats stats = new SearchStats();
+        int[] applicable = new int[problem.operatorCount()];
+        // the successors of the current level, before they are ranked
+        long[] childStates = new long[64];
+        int[] childParents = new int[64];
+        int[] childOperators = new int[64];
+        boolean truncated = false;
+
+        int root = tree.add(problem.start(), SearchTree.ROOT, -1);
+        visited.add(problem.start());
+        stats.nodeStored();
+        if (problem.isGoal(problem.start())) {
+            return SearchResult.found(tree.path(root, problem), stats);
+        }
+
+        int levelStart = 0;
+        while (levelStart < tree.size()) {
+            if (visited.size() >= nodeBudget) {
+                // the kept states are in ranking order, the first one is the most promising
+                return complete(problem, tree, levelStart, stats);
+            }
+            int levelEnd = tree.size();
+            int children = 0;
+            generated.clear();
+            for (int node = levelStart; node < levelEnd; node++) {
+                long state = tree.state(node);
+                stats.nodeExpanded();
+                long started = System.nanoTime();
+                int count = problem.applicableOperators(state, applicable);
+                long applied = System.nanoTime();
+                stats.canApplyTime(applied - started);
+                stats.successorsGenerated(count);
+                for (int i = 0; i < count; i++) {
+                    long nextState = problem.apply(applicable[i], state);
+                    if (!problem.canReachGoal(nextState)) {
+                        continue;
+                    }
+                    if (visited.contains(nextState) || !generated.add(nextState)) {
+                        stats.duplicateSkipped();
+                        continue;
+                    }
+                    if (problem.isGoal(nextState)) {
+                        int goal = tree.add(nextState, node, applicable[i]);
+                        stats.nodeStored();
+                        return SearchResult.found(tree.path(goal, problem), stats, !truncated);
+                    }
+                    if (children == childStates.length) {
+                        childStates = Arrays.copyOf(childStates, children << 1);
+                        childParents = Arrays.copyOf(childParents, children << 1);
+                        childOperators = Arrays.copyOf(childOperators, children << 1);
+                    }
+                    childStates[children] = nextState;
+                    childParents[children] = node;
+                    childOperators[children] = applicable[i];
+                    children++;
+                }
+                stats.applyTime(System.nanoTime() - applied);
+            }
+
+            // keep the best states of the next level
+            truncated |= children > width;
+            ranking.clear();
+            for (int child = 0; child < children; child++) {
+                ranking.add(LongMinHeap.entry(heuristic.estimate(problem, childStates[child]), child));
+            }
+            for (int kept = 0; kept < width && !ranking.isEmpty(); kept++) {
+                int child = LongMinHeap.node(ranking.poll());
+                tree.add(childStates[child], childParents[child], childOperators[child]);
+                visited.add(childStates[child]);
+                stats.nodeStored();
+            }
+            stats.frontierSize(tree.size() - levelEnd);
+            levelStart = levelEnd;
+        }
+
+        return SearchResult.notFound(stats, !truncated);
+    }
+
+    private SearchResult complete(SearchProblem problem, SearchTree tree, int node, SearchStats stats) {
+        List<Integer> completion = GreedyCompletion.complete(problem, heuristic, tree.state(node), nodeBudget,
+                stats);
+        List<ServiceFunction> path = new ArrayList<>();
+        if (completion != null) {
+            path.addAll(tree.path(node, problem));
+            for (int op : completion) {
+                path.add(problem.function(op));
+            }
+        }
+        return SearchResult.budgetExhausted(path, stats);
+    }
+}
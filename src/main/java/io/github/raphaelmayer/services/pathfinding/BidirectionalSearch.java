@@ -0,0 +1,247 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.util.LongHashSet;
+import io.github.raphaelmayer.util.LongIntHashMap;
+
+/**
+ * Bidirectional breadth-first search. The forward side expands concrete states
+ * from the input, the backward side regresses the target through the services
+ * and meets the forward side in the middle, so both sides only explore about
+ * half the depth.
+ *
+ * The target only fixes some attributes, so backward nodes are partial states:
+ * a value pattern plus a mask of "wildcard" fields that may hold any value. A
+ * forward state meets a backward node, if it matches all non-wildcard fields.
+ * Both sides expand whole levels and the shortest meeting within a level is
+ * returned, which keeps the result a shortest path.
+ */
+public class BidirectionalSearch implements SearchStrategy {
+
+    public static final String NAME = "bidirectional";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        return new Run(problem).search();
+    }
+
+    /**
+     * The state of a single search.
+     */
+    private static class Run {
+
+        private final SearchProblem problem;
+        private final StateEncoder encoder;
+        private final SearchStats stats = new SearchStats();
+
+        private final SearchTree forward = new SearchTree();
+        private final LongHashSet forwardVisited = new LongHashSet();
+        // wildcard mask -> (state with the wildcard fields cleared -> forward node)
+        private final Map<Long, LongIntHashMap> forwardIndex = new HashMap<>();
+
+        // backward node values, their wildcard masks are kept alongside
+        private final SearchTree backward = new SearchTree();
+        private long[] backwardWildcards = new long[1024];
+        // wildcard mask -> (pattern values -> backward node)
+        private final Map<Long, LongIntHashMap> backwardIndex = new HashMap<>();
+
+        private final int[] applicable;
+        private final int[] producing;
+
+        private int bestForward = -1;
+        private int bestBackward = -1;
+        private int bestLength = Integer.MAX_VALUE;
+
+        Run(SearchProblem problem) {
+            this.problem = problem;
+            this.encoder = problem.encoder();
+            this.applicable = new int[problem.operatorCount()];
+            this.producing = new int[problem.operatorCount() * Math.max(1, problem.maxWrittenKeys())];
+        }
+
+        SearchResult search() {
+            if (!problem.isFeasible()) {
+                return SearchResult.notFound(stats);
+            }
+            long allFields = 0L;
+            for (int key = 0; key < encoder.keyCount(); key++) {
+                allFields |= encoder.fieldMask(key);
+            }
+            addBackward(problem.goalBits(), allFields & ~problem.goalMask(), SearchTree.ROOT, -1);
+            addForward(problem.start(), SearchTree.ROOT, -1);
+
+            int forwardLevel = 0;
+            int backwardLevel = 0;
+            while (bestLength == Integer.MAX_VALUE) {
+                int forwardEnd = forward.size();
+                int backwardEnd = backward.size();
+                if (forwardLevel == forwardEnd || backwardLevel == backwardEnd) {
+                    return SearchResult.notFound(stats); // one side is exhausted
+                }
+                // always grow the smaller frontier
+                if (forwardEnd - forwardLevel <= backwardEnd - backwardLevel) {
+                    for (int node = forwardLevel; node < forwardEnd; node++) {
+                        expandForward(node);
+                    }
+                    forwardLevel = forwardEnd;
+                } else {
+                    for (int node = backwardLevel; node < backwardEnd; node++) {
+                        expandBackward(node);
+                    }
+                    backwardLevel = backwardEnd;
+                }
+                stats.frontierSize((forward.size() - forwardLevel) + (backward.size() - backwardLevel));
+            }
+
+            List<ServiceFunction> path = forward.path(bestForward, problem);
+            for (int node = bestBackward; backward.parent(node) != SearchTree.ROOT; node = backward.parent(node)) {
+                path.add(problem.function(backward.operator(node)));
+            }
+            return SearchResult.found(path, stats);
+        }
+
+        private void expandForward(int node) {
+            stats.nodeExpanded();
+            long state = forward.state(node);
+            long started = System.nanoTime();
+            int count = problem.applicableOperators(state, applicable);
+            long applied = System.nanoTime();
+            stats.canApplyTime(applied - started);
+            stats.successorsGenerated(count);
+            for (int i = 0; i < count; i++) {
+                long next = problem.apply(applicable[i], state);
+                if (forwardVisited.contains(next)) {
+                    stats.duplicateSkipped();
+                } else if (problem.canReachGoal(next)) {
+                    addForward(next, node, applicable[i]);
+                }
+            }
+            stats.applyTime(System.nanoTime() - applied);
+        }
+
+        private void addForward(long state, int parent, int op) {
+            int node = forward.add(state, parent, op);
+            forwardVisited.add(state);
+            stats.nodeStored();
+            for (Map.Entry<Long, LongIntHashMap> entry : forwardIndex.entrySet()) {
+                long key = state & ~entry.getKey();
+                if (!entry.getValue().containsKey(key)) {
+                    entry.getValue().put(key, node);
+                }
+            }
+            for (Map.Entry<Long, LongIntHashMap> entry : backwardIndex.entrySet()) {
+                int match = entry.getValue().get(state & ~entry.getKey());
+                if (match >= 0) {
+                    meet(node, match);
+                }
+            }
+        }
+
+        /**
+         * Regresses the backward node through every service that produces one of
+         * its fixed fields. The written fields become wildcards and the service's
+         * input requirements are added, enumerating the accepted values of
+         * requirements on wildcard fields.
+         */
+        private void expandBackward(int node) {
+            stats.nodeExpanded();
+            long values = backward.state(node);
+            long wildcards = backwardWildcards[node];
+            // services that only write wildcard fields cannot bring us closer
+            int count = problem.producingOperators(values, wildcards, producing);
+            stats.successorsGenerated(count);
+            for (int i = 0; i < count; i++) {
+                int op = producing[i];
+                long writeMask = problem.writeMask(op);
+                // the service has to produce all fixed values it writes
+                if (((values ^ problem.writeBits(op)) & writeMask & ~wildcards) != 0) {
+                    continue;
+                }
+                long predecessorWildcards = wildcards | writeMask;
+                regress(node, op, 0, values & ~predecessorWildcards, predecessorWildcards);
+            }
+        }
+
+        private void regress(int node, int op, int index, long values, long wildcards) {
+            int[] keys = problem.preconditionKeys(op);
+            if (index == keys.length) {
+                LongIntHashMap known = backwardIndex.get(wildcards);
+                if (known != null && known.containsKey(values)) {
+                    stats.duplicateSkipped();
+                } else if (problem.reachableFromStart(values, wildcards)) {
+                    // patterns the input can never grow into are dead ends as well
+                    addBackward(values, wildcards, node, op);
+                }
+                return;
+            }
+            int key = keys[index];
+            long[] accepted = problem.preconditionCodes(op)[index];
+            long field = encoder.fieldMask(key);
+            if ((wildcards & field) == 0) {
+                if (StateEncoder.contains(accepted, encoder.get(values, key))) {
+                    regress(node, op, index + 1, values, wildcards);
+                }
+                return;
+            }
+            for (int word = 0; word < accepted.length; word++) {
+                for (long bits = accepted[word]; bits != 0; bits &= bits - 1) {
+                    int code = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    regress(node, op, index + 1, encoder.set(values, key, code), wildcards & ~field);
+                }
+            }
+        }
+
+        private void addBackward(long values, long wildcards, int parent, int op) {
+            int node = backward.add(values, parent, op);
+            if (node == backwardWildcards.length) {
+                backwardWildcards = Arrays.copyOf(backwardWildcards, node << 1);
+            }
+            backwardWildcards[node] = wildcards;
+            stats.nodeStored();
+
+            LongIntHashMap known = backwardIndex.get(wildcards);
+            if (known == null) {
+                known = new LongIntHashMap(-1);
+                backwardIndex.put(wildcards, known);
+                forwardIndex.put(wildcards, indexForward(wildcards));
+            }
+            known.put(values, node);
+
+            int match = forwardIndex.get(wildcards).get(values);
+            if (match >= 0) {
+                meet(match, node);
+            }
+        }
+
+        private LongIntHashMap indexForward(long wildcards) {
+            LongIntHashMap index = new LongIntHashMap(-1);
+            for (int node = 0; node < forward.size(); node++) {
+                long key = forward.state(node) & ~wildcards;
+                if (!index.containsKey(key)) {
+                    index.put(key, node);
+                }
+            }
+            return index;
+        }
+
+        private void meet(int forwardNode, int backwardNode) {
+            int length = forward.depth(forwardNode) + backward.depth(backwardNode);
+            if (length < bestLength) {
+                bestLength = length;
+                bestForward = forwardNode;
+                bestBackward = backwardNode;
+            }
+        }
+    }
+}
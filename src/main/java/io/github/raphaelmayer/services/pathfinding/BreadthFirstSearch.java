@@ -0,0 +1,83 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import io.github.raphaelmayer.util.LongHashSet;
+
+/**
+ * Plain breadth-first search. It expands every reachable state level by level
+ * and returns a path with the fewest service invocations. This is the default
+ * strategy.
+ */
+public class BreadthFirstSearch implements SearchStrategy {
+
+    public static final String NAME = "bfs";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        StateEncoder encoder = problem.encoder();
+        // Nodes are appended in BFS order, so the frontier is simply the range
+        // [head, tree.size()) and needs no queue of its own
+        SearchTree tree = new SearchTree();
+        LongHashSet visited = new LongHashSet();
+        SearchStats stats = new SearchStats();
+        int[] applicable = new int[problem.operatorCount()];
+
+        // Start the search from the initial state
+        int root = tree.add(problem.start(), SearchTree.ROOT, -1);
+        visited.add(problem.start());
+        stats.nodeStored();
+        if (problem.isGoal(problem.start())) {
+            return SearchResult.found(tree.path(root, problem), stats);
+        }
+
+        boolean verbose = problem.isVerbose();
+        for (int head = 0; head < tree.size(); head++) {
+            long currentState = tree.state(head);
+            stats.nodeExpanded();
+            if (verbose) {
+                System.out.println("\nNode{state=" + encoder.decode(currentState) + ", depth=" + tree.depth(head) + "}");
+            }
+
+            // Explore the applicable services to find the next valid state transitions
+            long started = System.nanoTime();
+            int count = problem.applicableOperators(currentState, applicable);
+            long applied = System.nanoTime();
+            stats.canApplyTime(applied - started);
+            stats.successorsGenerated(count);
+            for (int i = 0; i < count; i++) {
+                int op = applicable[i];
+                long nextState = problem.apply(op, currentState);
+                if (verbose) {
+                    System.out.println("Can apply " + problem.function(op).name + ", new state: "
+                            + encoder.decode(nextState));
+                }
+
+                // Drop states that can no longer reach the target and avoid revisiting
+                // the same state by deduplicating at enqueue time
+                if (!problem.canReachGoal(nextState)) {
+                    continue;
+                }
+                if (!visited.add(nextState)) {
+                    stats.duplicateSkipped();
+                    continue;
+                }
+                int next = tree.add(nextState, head, op);
+                stats.nodeStored();
+                stats.frontierSize(tree.size() - head - 1);
+
+                // Nodes are generated in BFS order, so the first goal is a shortest path
+                if (problem.isGoal(nextState)) {
+                    stats.applyTime(System.nanoTime() - applied);
+                    return SearchResult.found(tree.path(next, problem), stats);
+                }
+            }
+            stats.applyTime(System.nanoTime() - applied);
+        }
+
+        return SearchResult.notFound(stats);
+    }
+}
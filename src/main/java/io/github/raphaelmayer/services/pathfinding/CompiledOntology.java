@@ -0,0 +1,643 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.raphaelmayer.models.Ontology;
+import io.github.raphaelmayer.models.OntologyChange;
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.util.Utils;
+
+/**
+ * An immutable, indexed view of an {@link Ontology}. It is built once when the
+ * ontology is loaded and answers the lookups of the planner without scanning
+ * every function:
+ * <ul>
+ * <li>functions by name, by type, by provider and by region</li>
+ * <li>functions by (input attribute, value) pair</li>
+ * <li>split/merge functions by (function type, data type)</li>
+ * <li>applicable functions for an encoded state</li>
+ * <li>which values of an attribute can be reached from another value</li>
+ * </ul>
+ * Functions keep their ontology order in every index, so lookups return the
+ * same function the linear scans did.
+ *
+ * Changes of a running planner's ontology (see {@link #apply(OntologyChange)})
+ * yield a new instance that shares what the change does not touch: the hashes
+ * and requirements of unchanged functions, and the reachability of attributes
+ * no changed function writes.
+ */
+public final class CompiledOntology {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<ServiceFunction> functions;
+    private final StateEncoder encoder;
+    private final String contentHash;
+    // the content hash of every function, the ontology hash is built from them
+    private final String[] functionHashes;
+
+    private final Map<String, ServiceFunction> byName = new HashMap<>();
+    private final Map<String, Integer> indexByName = new HashMap<>();
+    private final Map<String, List<ServiceFunction>> byType = new HashMap<>();
+    private final Map<String, Map<Object, List<ServiceFunction>>> byInputValue = new HashMap<>();
+    private final Map<String, List<ServiceFunction>> byProvider = new HashMap<>();
+    private final Map<String, List<ServiceFunction>> byRegion = new HashMap<>();
+
+    // Encoded input requirements, operator i corresponds to functions.get(i)
+    private final int[][] preKeys;
+    private final long[][][] preCodes;
+    // Every function is indexed under its most selective requirement:
+    // pivotIndex[key][code] lists the functions whose pivot key accepts that code
+    private final int[][][] pivotIndex;
+    private final int[] unconditional;
+    // reachable[key][code] is the bitset of codes that some chain of functions can
+    // turn the code into, looking at that key alone (reflexive)
+    private final long[][][] reachable;
+    // acceptors[key][code] is the bitset of functions whose requirement on the key
+    // accepts the code
+    private final long[][][] acceptors;
+
+    /**
+     * @param previous a compiled ontology to reuse the indexes of unchanged
+     *                 functions from, or null
+     */
+    private CompiledOntology(List<ServiceFunction> functions, CompiledOntology previous) {
+        this.functions = Collections.unmodifiableList(new ArrayList<>(functions));
+
+        // unchanged functions are the very same objects, the others are added or removed
+        Map<ServiceFunction, Integer> previousIndex = new IdentityHashMap<>();
+        for (int i = 0; previous != null && i < previous.functions.size(); i++) {
+            previousIndex.put(previous.functions.get(i), i);
+        }
+        StateEncoder compiledEncoder = new StateEncoder(this.functions);
+        boolean sameCodes = previous != null && compiledEncoder.hasSameCodes(previous.encoder);
+        // sharing the encoder keeps states of earlier searches valid
+        this.encoder = sameCodes ? previous.encoder : compiledEncoder;
+
+        this.functionHashes = new String[this.functions.size()];
+        StringBuilder hashes = new StringBuilder();
+        for (int i = 0; i < functionHashes.length; i++) {
+            Integer before = previousIndex.get(this.functions.get(i));
+            functionHashes[i] = before != null ? previous.functionHashes[before]
+                    : Utils.sha256Hex(MAPPER.valueToTree(this.functions.get(i)).toString());
+            hashes.append(functionHashes[i]);
+        }
+        this.contentHash = Utils.sha256Hex(hashes.toString());
+
+        for (int i = 0; i < this.functions.size(); i++) {
+            indexByName.putIfAbsent(this.functions.get(i).name, i);
+        }
+        for (ServiceFunction function : this.functions) {
+            byName.putIfAbsent(function.name, function);
+            append(byType, function.type.toLowerCase(), function);
+            append(byProvider, function.provider, function);
+            for (String region : function.regions) {
+                append(byRegion, region, function);
+            }
+            for (Map.Entry<String, Object> entry : function.input.entrySet()) {
+                Map<Object, List<ServiceFunction>> byValue = byInputValue.computeIfAbsent(entry.getKey(),
+                        k -> new LinkedHashMap<>());
+                for (Object value : StateEncoder.asList(entry.getValue())) {
+                    append(byValue, value, function);
+                }
+            }
+        }
+        freeze(byType);
+        freeze(byProvider);
+        freeze(byRegion);
+        for (Map<Object, List<ServiceFunction>> byValue : byInputValue.values()) {
+            freeze(byValue);
+        }
+
+        int count = this.functions.size();
+        this.preKeys = new int[count][];
+        this.preCodes = new long[count][][];
+        List<List<List<Integer>>> pivots = new ArrayList<>();
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            List<List<Integer>> byCode = new ArrayList<>();
+            for (int code = 0; code < encoder.cardinality(key); code++) {
+                byCode.add(new ArrayList<>());
+            }
+            pivots.add(byCode);
+        }
+        List<Integer> withoutRequirements = new ArrayList<>();
+
+        for (int op = 0; op < count; op++) {
+            ServiceFunction function = this.functions.get(op);
+            Integer before = sameCodes ? previousIndex.get(function) : null;
+            if (before != null) {
+                preKeys[op] = previous.preKeys[before];
+                preCodes[op] = previous.preCodes[before];
+            } else {
+                compileRequirements(op, function);
+            }
+            int[] keys = preKeys[op];
+            long[][] codes = preCodes[op];
+            int pivot = -1;
+            int pivotSize = Integer.MAX_VALUE;
+            for (int i = 0; i < keys.length; i++) {
+                int size = countCodes(codes[i]);
+                if (size < pivotSize) {
+                    pivot = i;
+                    pivotSize = size;
+                }
+            }
+
+            if (pivot < 0) {
+                withoutRequirements.add(op);
+                continue;
+            }
+            for (int code = 0; code < encoder.cardinality(keys[pivot]); code++) {
+                if (StateEncoder.contains(codes[pivot], code)) {
+                    pivots.get(keys[pivot]).get(code).add(op);
+                }
+            }
+        }
+
+        this.pivotIndex = new int[encoder.keyCount()][][];
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            pivotIndex[key] = new int[encoder.cardinality(key)][];
+            for (int code = 0; code < encoder.cardinality(key); code++) {
+                pivotIndex[key][code] = toArray(pivots.get(key).get(code));
+            }
+        }
+        this.unconditional = toArray(withoutRequirements);
+        if (sameCodes) {
+            // the closure of a key only depends on the functions that write it
+            boolean[] changedKeys = new boolean[encoder.keyCount()];
+            Map<ServiceFunction, Boolean> current = new IdentityHashMap<>();
+            for (ServiceFunction function : this.functions) {
+                current.put(function, Boolean.TRUE);
+                if (!previousIndex.containsKey(function)) {
+                    markWrittenKeys(function, changedKeys);
+                }
+            }
+            for (ServiceFunction function : previous.functions) {
+                if (!current.containsKey(function)) {
+                    markWrittenKeys(function, changedKeys);
+                }
+            }
+            this.reachable = computeReachability(null, previous.reachable, changedKeys);
+        } else {
+            this.reachable = computeReachability(null, null, null);
+        }
+        this.acceptors = computeAcceptors();
+    }
+
+    private void compileRequirements(int op, ServiceFunction function) {
+        int[] keys = new int[function.input.size()];
+        long[][] codes = new long[keys.length][];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : function.input.entrySet()) {
+            keys[i] = encoder.keyIndex(entry.getKey());
+            codes[i] = encoder.codeSet(keys[i], StateEncoder.asList(entry.getValue()));
+            i++;
+        }
+        preKeys[op] = keys;
+        preCodes[op] = codes;
+    }
+
+    private void markWrittenKeys(ServiceFunction function, boolean[] keys) {
+        for (Map.Entry<String, Object> entry : function.output.entrySet()) {
+            if (!StateEncoder.asList(entry.getValue()).isEmpty()) {
+                keys[encoder.keyIndex(entry.getKey())] = true;
+            }
+        }
+    }
+
+    private long[][][] computeAcceptors() {
+        int words = (functions.size() + 63) >>> 6;
+        long[][][] result = new long[encoder.keyCount()][][];
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            result[key] = new long[encoder.cardinality(key)][words];
+        }
+        for (int op = 0; op < functions.size(); op++) {
+            for (int i = 0; i < preKeys[op].length; i++) {
+                long[][] byCode = result[preKeys[op][i]];
+                for (int code = 0; code < byCode.length; code++) {
+                    if (StateEncoder.contains(preCodes[op][i], code)) {
+                        byCode[code][op >>> 6] |= 1L << op;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the reachability closure (see {@link #reachableCodes(int, int)})
+     * over the functions that are not excluded, e.g. by planning constraints.
+     *
+     * @param excluded the excluded functions by index, or null for the shared
+     *                 closure over all functions
+     * @return reachable[key][code], the codes reachable from the code
+     */
+    long[][][] reachability(boolean[] excluded) {
+        return excluded == null ? reachable : computeReachability(excluded, null, null);
+    }
+
+    /**
+     * Projects the functions onto each key and builds the transitive closure of
+     * the value transitions. Requirements on other keys are ignored, so this over-
+     * approximates what the planner can reach: a value that is unreachable here is
+     * unreachable in every search.
+     *
+     * @param reuse   the closure of an ontology with the same codes, or null
+     * @param changed the keys whose closure cannot be taken from reuse
+     */
+    private long[][][] computeReachability(boolean[] excluded, long[][][] reuse, boolean[] changed) {
+        long[][][] closure = new long[encoder.keyCount()][][];
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            if (reuse != null && !changed[key]) {
+                closure[key] = reuse[key];
+                continue;
+            }
+            int cardinality = encoder.cardinality(key);
+            int words = (cardinality + 63) >>> 6;
+            long[][] step = new long[cardinality][words];
+            for (int op = 0; op < functions.size(); op++) {
+                if (excluded != null && excluded[op]) {
+                    continue;
+                }
+                long[] produced = producedCodes(op, key);
+                if (produced == null) {
+                    continue;
+                }
+                long[] accepted = acceptedCodes(op, key);
+                for (int code = 0; code < cardinality; code++) {
+                    if (accepted == null || StateEncoder.contains(accepted, code)) {
+                        or(step[code], produced);
+                    }
+                }
+            }
+
+            closure[key] = new long[cardinality][];
+            for (int from = 0; from < cardinality; from++) {
+                long[] seen = new long[words];
+                int[] queue = new int[cardinality];
+                int head = 0;
+                int tail = 0;
+                seen[from >>> 6] |= 1L << from;
+                queue[tail++] = from;
+                while (head < tail) {
+                    long[] next = step[queue[head++]];
+                    for (int word = 0; word < words; word++) {
+                        for (long bits = next[word] & ~seen[word]; bits != 0; bits &= bits - 1) {
+                            int code = (word << 6) + Long.numberOfTrailingZeros(bits);
+                            seen[word] |= 1L << code;
+                            queue[tail++] = code;
+                        }
+                    }
+                }
+                closure[key][from] = seen;
+            }
+        }
+        return closure;
+    }
+
+    private long[] producedCodes(int op, int key) {
+        Object output = functions.get(op).output.get(encoder.key(key));
+        List<Object> values = StateEncoder.asList(output);
+        return values.isEmpty() ? null : encoder.codeSet(key, values);
+    }
+
+    private long[] acceptedCodes(int op, int key) {
+        int[] keys = preKeys[op];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                return preCodes[op][i];
+            }
+        }
+        return null; // the function accepts any value
+    }
+
+    /**
+     * Builds the indexes for the ontology. The ontology itself is not modified.
+     *
+     * @throws IllegalArgumentException if the attributes of the ontology do not
+     *                                  fit into an encoded state (see
+     *                                  {@link StateEncoder#MAX_BITS})
+     */
+    public static CompiledOntology compile(Ontology ontology) {
+        return new CompiledOntology(ontology.functions, null);
+    }
+
+    public static CompiledOntology compile(List<ServiceFunction> functions) {
+        return new CompiledOntology(functions, null);
+    }
+
+    /**
+     * Compiles the ontology after the change. Added functions are appended,
+     * modified ones keep their position. Unless the change introduces or drops
+     * attribute values, the result reuses the indexes of this instance where
+     * the change does not touch them; it equals a full compilation either way.
+     *
+     * @throws IllegalArgumentException if an added function exists already, a
+     *                                  removed or modified one does not, or the
+     *                                  attributes no longer fit into an encoded
+     *                                  state
+     */
+    public CompiledOntology apply(OntologyChange change) {
+        List<ServiceFunction> changed = new ArrayList<>(functions);
+        int index = indexOf(change.functionName());
+        if (change.kind != OntologyChange.Kind.REMOVED && change.function == null) {
+            throw new IllegalArgumentException(change.kind + " change without a function.");
+        }
+        switch (change.kind) {
+            case ADDED:
+                if (index >= 0) {
+                    throw new IllegalArgumentException("Function " + change.functionName() + " already exists.");
+                }
+                changed.add(change.function);
+                break;
+            case REMOVED:
+                if (index < 0) {
+                    throw new IllegalArgumentException("Unknown function " + change.functionName() + ".");
+                }
+                changed.remove(index);
+                break;
+            case MODIFIED:
+                if (index < 0) {
+                    throw new IllegalArgumentException("Unknown function " + change.functionName() + ".");
+                }
+                changed.set(index, change.function);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown change " + change.kind + ".");
+        }
+        return new CompiledOntology(changed, this);
+    }
+
+    public List<ServiceFunction> getFunctions() {
+        return functions;
+    }
+
+    public ServiceFunction function(int op) {
+        return functions.get(op);
+    }
+
+    public int size() {
+        return functions.size();
+    }
+
+    public StateEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * @return a SHA-256 hash over the functions, which changes whenever the
+     *         ontology file is edited in a way that affects its content
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public ServiceFunction getFunction(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return the index of the function with the name (the first one, like
+     *         {@link #getFunction(String)}), or -1 if there is none
+     */
+    public int indexOf(String name) {
+        return indexByName.getOrDefault(name, -1);
+    }
+
+    public List<ServiceFunction> getFunctionsByType(String type) {
+        return byType.getOrDefault(type.toLowerCase(), Collections.emptyList());
+    }
+
+    /**
+     * @return the functions that accept the value for the input attribute
+     */
+    public List<ServiceFunction> getFunctionsByInput(String attribute, Object value) {
+        Map<Object, List<ServiceFunction>> byValue = byInputValue.get(attribute);
+        if (byValue == null) {
+            return Collections.emptyList();
+        }
+        return byValue.getOrDefault(value, Collections.emptyList());
+    }
+
+    public List<ServiceFunction> getFunctionsByProvider(String provider) {
+        return byProvider.getOrDefault(provider, Collections.emptyList());
+    }
+
+    /**
+     * @return the functions that explicitly list the region. Functions without any
+     *         regions (e.g. core functions) are not contained.
+     */
+    public List<ServiceFunction> getFunctionsByRegion(String region) {
+        return byRegion.getOrDefault(region, Collections.emptyList());
+    }
+
+    /**
+     * Finds the first function of a type (e.g. "Split") that accepts the data type.
+     */
+    public ServiceFunction findFunctionByType(String functionType, Object dataType) {
+        List<ServiceFunction> candidates = getFunctionsByInput("type", dataType);
+        List<ServiceFunction> ofType = getFunctionsByType(functionType);
+        // walk the shorter list, both are in ontology order
+        if (candidates.size() <= ofType.size()) {
+            for (ServiceFunction function : candidates) {
+                if (function.type.equalsIgnoreCase(functionType)) {
+                    return function;
+                }
+            }
+        } else {
+            for (ServiceFunction function : ofType) {
+                if (StateEncoder.asList(function.input.get("type")).contains(dataType)) {
+                    return function;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the keys the function requires, aligned with
+     *         {@link #preconditionCodes(int)}
+     */
+    public int[] preconditionKeys(int op) {
+        return preKeys[op];
+    }
+
+    /**
+     * @return one bitset of accepted codes per required key
+     */
+    public long[][] preconditionCodes(int op) {
+        return preCodes[op];
+    }
+
+    /**
+     * Determines if the function's input requirements are met by the state.
+     */
+    public boolean canApply(int op, long state) {
+        int[] keys = preKeys[op];
+        long[][] codes = preCodes[op];
+        for (int i = 0; i < keys.length; i++) {
+            if (!StateEncoder.contains(codes[i], encoder.get(state, keys[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the functions applicable to the state in ascending order. Only the
+     * functions indexed under the state's values are checked.
+     *
+     * @param buffer receives the operator indices, must hold {@link #size()}
+     *               entries
+     * @return the number of applicable functions
+     */
+    public int applicableOperators(long state, int[] buffer) {
+        return applicableOperators(state, null, buffer);
+    }
+
+    /**
+     * Like {@link #applicableOperators(long, int[])}, but leaves out excluded
+     * functions, e.g. by planning constraints.
+     *
+     * @param excluded the excluded functions by index, or null
+     * @param buffer   receives the operator indices, must hold as many entries
+     *                 as there are functions that are not excluded
+     */
+    public int applicableOperators(long state, boolean[] excluded, int[] buffer) {
+        int lists = encoder.keyCount() + 1;
+        int[][] candidates = new int[lists][];
+        int[] positions = new int[lists];
+        candidates[0] = unconditional;
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            candidates[key + 1] = pivotIndex[key][encoder.get(state, key)];
+        }
+
+        // merge the sorted candidate lists to keep the ontology order
+        int count = 0;
+        while (true) {
+            int best = -1;
+            for (int list = 0; list < lists; list++) {
+                if (positions[list] < candidates[list].length
+                        && (best < 0 || candidates[list][positions[list]] < candidates[best][positions[best]])) {
+                    best = list;
+                }
+            }
+            if (best < 0) {
+                return count;
+            }
+            int op = candidates[best][positions[best]++];
+            if ((excluded == null || !excluded[op]) && canApply(op, state)) {
+                buffer[count++] = op;
+            }
+        }
+    }
+
+    /**
+     * @return the bitset of codes the key can take on, starting from the code
+     */
+    public long[] reachableCodes(int key, int code) {
+        return reachable[key][code];
+    }
+
+    /**
+     * Determines if the key can change from one code into the other. A false
+     * result is definite, a true result only means no single attribute rules it
+     * out.
+     */
+    public boolean canReach(int key, int from, int to) {
+        return StateEncoder.contains(reachable[key][from], to);
+    }
+
+    /**
+     * Determines if the function may appear on a service path from the input to
+     * the target state: its requirements must be reachable from the input, and
+     * the target values from the values it writes. Like {@link #canReach(int,
+     * int, int)}, a false result is definite.
+     */
+    public boolean mayTakePart(int op, Map<String, Object> inputState, Map<String, Object> targetState) {
+        long start = encoder.encode(inputState);
+        for (int i = 0; i < preKeys[op].length; i++) {
+            int key = preKeys[op][i];
+            if (!intersects(reachable[key][encoder.get(start, key)], preCodes[op][i])) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, Object> entry : targetState.entrySet()) {
+            int key = encoder.keyIndex(entry.getKey());
+            long[] produced = key < 0 ? null : producedCodes(op, key);
+            if (produced == null) {
+                continue;
+            }
+            int goal = encoder.code(key, entry.getValue());
+            boolean reachesGoal = false;
+            for (int code = 0; code < encoder.cardinality(key) && !reachesGoal; code++) {
+                reachesGoal = StateEncoder.contains(produced, code) && canReach(key, code, goal);
+            }
+            if (!reachesGoal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if a value can stand in for another one: every function that
+     * accepts the other code for the key accepts this code as well, so any chain
+     * of functions that works on the other value also works on this one.
+     */
+    public boolean dominates(int key, int code, int other) {
+        long[] these = acceptors[key][code];
+        long[] others = acceptors[key][other];
+        for (int word = 0; word < these.length; word++) {
+            if ((others[word] & ~these[word]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <K> void append(Map<K, List<ServiceFunction>> index, K key, ServiceFunction function) {
+        index.computeIfAbsent(key, k -> new ArrayList<>()).add(function);
+    }
+
+    private static <K> void freeze(Map<K, List<ServiceFunction>> index) {
+        for (Map.Entry<K, List<ServiceFunction>> entry : index.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+    }
+
+    private static void or(long[] target, long[] bits) {
+        for (int word = 0; word < target.length; word++) {
+            target[word] |= bits[word];
+        }
+    }
+
+    private static boolean intersects(long[] codes, long[] others) {
+        for (int word = 0; word < codes.length; word++) {
+            if ((codes[word] & others[word]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int countCodes(long[] codeSet) {
+        int count = 0;
+        for (long word : codeSet) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.raphaelmayer.util.LongHashSet;
+import io.github.raphaelmayer.util.LongMinHeap;
+
+/**
+ * Completes a path once a memory-bounded search ran out of its node budget: a
+ * depth-first search from the most promising state the search kept, which
+ * tries the successor the heuristic rates best first and stops at the first
+ * goal. The completed path may be longer than necessary.
+ */
+final class GreedyCompletion {
+
+    private GreedyCompletion() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * @param expansions the number of states the completion may expand
+     * @return the operators leading from the state to a goal, or null if none
+     *         was found within the expansions
+     */
+    static List<Integer> complete(SearchProblem problem, Heuristic heuristic, long state, int expansions,
+            SearchStats stats) {
+        SearchTree tree = new SearchTree();
+        LongHashSet visited = new LongHashSet();
+        LongMinHeap ranking = new LongMinHeap();
+        int[] applicable = new int[problem.operatorCount()];
+        int[] stack = new int[64];
+        int top = 0;
+
+        int root = tree.add(state, SearchTree.ROOT, -1);
+        visited.add(state);
+        if (problem.isGoal(state)) {
+            return tree.operatorPath(root);
+        }
+        stack[top++] = root;
+        for (; top > 0 && expansions > 0; expansions--) {
+            int node = stack[--top];
+            long current = tree.state(node);
+            stats.nodeExpanded();
+            int count = problem.applicableOperators(current, applicable);
+            stats.successorsGenerated(count);
+
+            ranking.clear();
+            for (int i = 0; i < count; i++) {
+                long nextState = problem.apply(applicable[i], current);
+                if (!problem.canReachGoal(nextState)) {
+                    continue;
+                }
+                if (!visited.add(nextState)) {
+                    stats.duplicateSkipped();
+                    continue;
+                }
+                int next = tree.add(nextState, node, applicable[i]);
+                stats.nodeStored();
+                if (problem.isGoal(nextState)) {
+                    return tree.operatorPath(next);
+                }
+                ranking.add(LongMinHeap.entry(heuristic.estimate(problem, nextState), next));
+            }
+            // pushed worst first, so the best successor is expanded next
+            if (top + ranking.size() > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length << 1, top + ranking.size()));
+            }
+            int end = top + ranking.size();
+            for (int i = end - 1; i >= top; i--) {
+                stack[i] = LongMinHeap.node(ranking.poll());
+            }
+            top = end;
+            stats.frontierSize(top);
+        }
+        return null;
+    }
+}
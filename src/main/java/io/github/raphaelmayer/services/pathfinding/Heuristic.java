@@ -0,0 +1,10 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+/**
+ * Estimates the number of service invocations still needed to reach the
+ * target. Heuristics used by A* must never overestimate.
+ */
+public interface Heuristic {
+
+    int estimate(SearchProblem problem, long state);
+}
@@ -0,0 +1,182 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+/**
+ * Iterative-deepening A* (IDA*). A depth-first search bounded by a cost
+ * threshold is repeated with the smallest cost that exceeded the previous
+ * threshold. Only the current path is kept in memory, so the memory use is
+ * linear in the path length no matter how large the state space is.
+ *
+ * States are re-expanded in every iteration, so the number of expansions is
+ * capped by a node budget. A path found within the budget is a shortest path.
+ * Once the budget is used up, the search completes the path of the most
+ * promising state it reached (the lowest estimate, the deepest one on ties)
+ * greedily (see {@link GreedyCompletion}) and reports it as not optimal.
+ */
+public class IterativeDeepeningAStarSearch implements SearchStrategy {
+
+    public static final String NAME = "idastar";
+
+    private final int nodeBudget;
+    private final Heuristic heuristic;
+
+    /**
+     * @param nodeBudget the number of expansions the search may perform
+     */
+    public IterativeDeepeningAStarSearch(int nodeBudget, Heuristic heuristic) {
+        this.nodeBudget = nodeBudget;
+        this.heuristic = heuristic;
+    }
+
+    public IterativeDeepeningAStarSearch(int nodeBudget) {
+        this(nodeBudget, new MismatchedAttributesHeuristic());
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        return new Run(problem).search();
+    }
+
+    /**
+     * The state of a single search.
+     */
+    private class Run {
+
+        private static final int FOUND = -1;
+        private static final int EXHAUSTED = -2;
+
+        private final SearchProblem problem;
+        private final SearchStats stats = new SearchStats();
+        // the current path: states[0..depth] and the operators between them
+        private long[] states = new long[16];
+        private int[] operators = new int[16];
+        private int[][] applicable = new int[16][];
+        private int goalDepth;
+        // the most promising state reached so far and the operators leading to it
+        private int bestEstimate = Integer.MAX_VALUE;
+        private int[] bestOperators = new int[0];
+
+        Run(SearchProblem problem) {
+            this.problem = problem;
+        }
+
+        SearchResult search() {
+            states[0] = problem.start();
+            stats.nodeStored();
+            int threshold = heuristic.estimate(problem, problem.start());
+            while (true) {
+                int next = deepen(0, threshold);
+                if (next == FOUND) {
+                    List<ServiceFunction> path = new ArrayList<>();
+                    for (int depth = 0; depth < goalDepth; depth++) {
+                        path.add(problem.function(operators[depth]));
+                    }
+                    return SearchResult.found(path, stats);
+                }
+                if (next == EXHAUSTED) {
+                    return complete();
+                }
+                if (next == Integer.MAX_VALUE) {
+                    return SearchResult.notFound(stats); // every path has been tried
+                }
+                threshold = next;
+            }
+        }
+
+        private SearchResult complete() {
+            long state = problem.start();
+            for (int op : bestOperators) {
+                state = problem.apply(op, state);
+            }
+            List<Integer> completion = GreedyCompletion.complete(problem, heuristic, state, nodeBudget, stats);
+            List<ServiceFunction> path = new ArrayList<>();
+            if (completion != null) {
+                for (int op : bestOperators) {
+                    path.add(problem.function(op));
+                }
+                for (int op : completion) {
+                    path.add(problem.function(op));
+                }
+            }
+            return SearchResult.budgetExhausted(path, stats);
+        }
+
+        /**
+         * @return FOUND, EXHAUSTED, or the smallest cost above the threshold
+         */
+        private int deepen(int depth, int threshold) {
+            long state = states[depth];
+            int estimate = heuristic.estimate(problem, state);
+            int cost = depth + estimate;
+            if (estimate < bestEstimate || (estimate == bestEstimate && depth > bestOperators.length)) {
+                bestEstimate = estimate;
+                bestOperators = Arrays.copyOf(operators, depth);
+            }
+            if (cost > threshold) {
+                return cost;
+            }
+            if (problem.isGoal(state)) {
+                goalDepth = depth;
+                return FOUND;
+            }
+            if (stats.getNodesExpanded() >= nodeBudget) {
+                return EXHAUSTED;
+            }
+            stats.nodeExpanded();
+            stats.frontierSize(depth + 1);
+
+            if (depth + 1 == states.length) {
+                states = Arrays.copyOf(states, states.length << 1);
+                operators = Arrays.copyOf(operators, operators.length << 1);
+                applicable = Arrays.copyOf(applicable, applicable.length << 1);
+            }
+            if (applicable[depth] == null) {
+                applicable[depth] = new int[problem.operatorCount()];
+            }
+            int[] ops = applicable[depth];
+            long started = System.nanoTime();
+            int count = problem.applicableOperators(state, ops);
+            stats.canApplyTime(System.nanoTime() - started);
+            stats.successorsGenerated(count);
+            int minimum = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                long nextState = problem.apply(ops[i], state);
+                if (!problem.canReachGoal(nextState)) {
+                    continue;
+                }
+                if (onPath(nextState, depth)) {
+                    stats.duplicateSkipped();
+                    continue;
+                }
+                states[depth + 1] = nextState;
+                operators[depth] = ops[i];
+                stats.nodeStored();
+                int result = deepen(depth + 1, threshold);
+                if (result == FOUND || result == EXHAUSTED) {
+                    return result;
+                }
+                minimum = Math.min(minimum, result);
+            }
+            return minimum;
+        }
+
+        private boolean onPath(long state, int depth) {
+            for (int i = 0; i <= depth; i++) {
+                if (states[i] == state) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
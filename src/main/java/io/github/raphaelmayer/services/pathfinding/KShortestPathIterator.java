@@ -0,0 +1,299 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.util.LongHashSet;
+
+/**
+ * Lazily enumerates distinct loopless service paths in order of increasing
+ * length, with Yen's algorithm. The first path is the one BFS returns.
+ *
+ * Every accepted path P schedules one spur search per position i: the shortest
+ * path that shares the first i services with P but avoids the states before
+ * position i and the i-th service of every accepted path with the same prefix.
+ * Two things keep later paths cheap:
+ * <ul>
+ * <li>Like Lawler's variant, a path only schedules spur searches from the
+ * position where it deviates from the path it was derived from; the earlier
+ * ones have been done for that path already.</li>
+ * <li>Spur searches only run when their lower bound (at least the length of the
+ * shortest path) could beat the best candidate, the deepest ones first. An
+ * equally short alternative, e.g. another provider for the last step, is
+ * usually found by a search a step away from the target instead of a new search
+ * from the start.</li>
+ * </ul>
+ * The search state (problem, accepted paths, candidates and pending spur
+ * searches) is kept between calls to {@link #next()}.
+ *
+ * Paths that differ only in the output values the services write map to the same
+ * services and are returned once.
+ */
+public class KShortestPathIterator implements Iterator<List<ServiceFunction>> {
+
+    private final SearchProblem problem;
+    private final Heuristic heuristic;
+    private final SearchStats stats = new SearchStats();
+
+    private final List<Path> accepted = new ArrayList<>();
+    private final PriorityQueue<Path> candidates = new PriorityQueue<>(
+            (a, b) -> a.length() != b.length() ? Integer.compare(a.length(), b.length())
+                    : Integer.compare(a.sequence, b.sequence));
+    private final PriorityQueue<SpurTask> pending = new PriorityQueue<>(
+            (a, b) -> a.bound != b.bound ? Integer.compare(a.bound, b.bound) : Integer.compare(b.index, a.index));
+    private final Set<List<Integer>> knownPaths = new HashSet<>();
+    private final Set<List<ServiceFunction>> returned = new HashSet<>();
+
+    private int shortestLength = -1;
+    private int sequence;
+    private List<ServiceFunction> next;
+    private boolean started;
+
+    public KShortestPathIterator(SearchProblem problem) {
+        this(problem, new MismatchedAttributesHeuristic());
+    }
+
+    /**
+     * @param heuristic bounds the length of spur searches from below, it must be
+     *                  admissible
+     */
+    public KShortestPathIterator(SearchProblem problem, Heuristic heuristic) {
+        this.problem = problem;
+        this.heuristic = heuristic;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+        return next != null;
+    }
+
+    @Override
+    public List<ServiceFunction> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<ServiceFunction> path = next;
+        next = null;
+        return path;
+    }
+
+    /**
+     * @return the counters of all searches run so far
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    private List<ServiceFunction> advance() {
+        if (!started) {
+            started = true;
+            if (!problem.isFeasible()) {
+                return null;
+            }
+            Path first = spur(new int[0], new long[0], problem.start(), new LongHashSet(), new int[0], 0);
+            if (first == null) {
+                return null;
+            }
+            shortestLength = first.length();
+            addCandidate(first);
+        }
+
+        while (true) {
+            // a pending spur search could still find a path shorter than the best candidate
+            while (!pending.isEmpty() && (candidates.isEmpty() || pending.peek().bound < candidates.peek().length())) {
+                run(pending.poll());
+            }
+            Path best = candidates.poll();
+            if (best == null) {
+                return null;
+            }
+            accept(best);
+            List<ServiceFunction> functions = new ArrayList<>();
+            for (int op : best.operators) {
+                functions.add(problem.function(op));
+            }
+            if (returned.add(functions)) {
+                stats.setPathLength(functions.size());
+                return functions;
+            }
+        }
+    }
+
+    private void accept(Path path) {
+        int index = accepted.size();
+        accepted.add(path);
+        for (int i = path.deviation; i < path.length(); i++) {
+            int bound = i + Math.max(1, heuristic.estimate(problem, path.states[i]));
+            pending.add(new SpurTask(index, i, Math.max(shortestLength, bound)));
+        }
+    }
+
+    private void run(SpurTask task) {
+        Path path = accepted.get(task.path);
+        int i = task.index;
+
+        // the states of the root must not be revisited, so the paths stay loopless
+        LongHashSet blockedStates = new LongHashSet();
+        for (int j = 0; j < i; j++) {
+            blockedStates.add(path.states[j]);
+        }
+        // the next service of every accepted path with the same root is taken
+        int[] blockedOperators = new int[accepted.size()];
+        int blocked = 0;
+        for (Path other : accepted) {
+            if (other.length() > i && sharesRoot(path, other, i)) {
+                blockedOperators[blocked++] = other.operators[i];
+            }
+        }
+
+        Path candidate = spur(Arrays.copyOf(path.operators, i), Arrays.copyOf(path.states, i), path.states[i],
+                blockedStates, Arrays.copyOf(blockedOperators, blocked), i);
+        if (candidate != null) {
+            addCandidate(candidate);
+        }
+    }
+
+    private void addCandidate(Path candidate) {
+        List<Integer> operators = new ArrayList<>();
+        for (int op : candidate.operators) {
+            operators.add(op);
+        }
+        if (knownPaths.add(operators)) {
+            candidate.sequence = sequence++;
+            candidates.add(candidate);
+        }
+    }
+
+    private static boolean sharesRoot(Path path, Path other, int length) {
+        for (int j = 0; j < length; j++) {
+            if (path.operators[j] != other.operators[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs a BFS from the spur state and appends the shortest spur path to the
+     * root.
+     *
+     * @return the root followed by the spur path, or null if there is none
+     */
+    private Path spur(int[] rootOperators, long[] rootStates, long spurState, LongHashSet blockedStates,
+            int[] blockedOperators, int deviation) {
+        SearchTree tree = new SearchTree();
+        LongHashSet visited = blockedStates;
+        int[] applicable = new int[problem.operatorCount()];
+
+        tree.add(spurState, SearchTree.ROOT, -1);
+        visited.add(spurState);
+        stats.nodeStored();
+        int goal = problem.isGoal(spurState) ? 0 : -1;
+
+        for (int head = 0; goal < 0 && head < tree.size(); head++) {
+            long state = tree.state(head);
+            stats.nodeExpanded();
+            long started = System.nanoTime();
+            int count = problem.applicableOperators(state, applicable);
+            long applied = System.nanoTime();
+            stats.canApplyTime(applied - started);
+            stats.successorsGenerated(count);
+            for (int i = 0; i < count; i++) {
+                int op = applicable[i];
+                if (head == 0 && contains(blockedOperators, op)) {
+                    continue;
+                }
+                long nextState = problem.apply(op, state);
+                if (!problem.canReachGoal(nextState)) {
+                    continue;
+                }
+                if (!visited.add(nextState)) {
+                    stats.duplicateSkipped();
+                    continue;
+                }
+                int node = tree.add(nextState, head, op);
+                stats.nodeStored();
+                if (problem.isGoal(nextState)) {
+                    goal = node;
+                    break;
+                }
+            }
+            stats.applyTime(System.nanoTime() - applied);
+        }
+        if (goal < 0) {
+            return null;
+        }
+
+        List<Integer> spurOperators = tree.operatorPath(goal);
+        int length = rootOperators.length + spurOperators.size();
+        int[] operators = Arrays.copyOf(rootOperators, length);
+        long[] states = Arrays.copyOf(rootStates, length + 1);
+        long state = spurState;
+        states[rootOperators.length] = state;
+        for (int j = 0; j < spurOperators.size(); j++) {
+            operators[rootOperators.length + j] = spurOperators.get(j);
+            state = problem.apply(spurOperators.get(j), state);
+            states[rootOperators.length + j + 1] = state;
+        }
+        return new Path(operators, states, deviation);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A path as operators and the states along it, states[i] is the state before
+     * operators[i].
+     */
+    private static class Path {
+
+        private final int[] operators;
+        private final long[] states;
+        // the first position at which this path deviates from the path it was derived from
+        private final int deviation;
+        private int sequence;
+
+        Path(int[] operators, long[] states, int deviation) {
+            this.operators = operators;
+            this.states = states;
+            this.deviation = deviation;
+        }
+
+        int length() {
+            return operators.length;
+        }
+    }
+
+    /**
+     * A scheduled spur search of an accepted path at a position.
+     */
+    private static class SpurTask {
+
+        private final int path;
+        private final int index;
+        // no spur path found by this task is shorter
+        private final int bound;
+
+        SpurTask(int path, int index, int bound) {
+            this.path = path;
+            this.index = index;
+            this.bound = bound;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+/**
+ * Learns macro-operators: sub-paths of consecutive services that show up in
+ * many found service paths (e.g. transcribe followed by translate). Frequent
+ * ones are offered to the {@link MacroSearch} as single composite operators.
+ *
+ * Macros are stored by function name in a JSON file, so they survive restarts.
+ * Macros naming functions the ontology no longer has are skipped when a search
+ * problem is compiled.
+ *
+ * The library is thread-safe.
+ */
+public class MacroLibrary {
+
+    private final Path file;
+    private final int minFrequency;
+    private final int maxLength;
+    private final int limit;
+    private final Map<List<String>, Integer> counts = new LinkedHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * A macro as stored on disk.
+     */
+    public static class MacroEntry {
+        public List<String> functions;
+        public int count;
+    }
+
+    /**
+     * @param file         the JSON file the macros are persisted in, or null to
+     *                     keep them in memory only
+     * @param minFrequency how often a sub-path must occur to become a macro
+     * @param maxLength    the longest sub-path recorded
+     * @param limit        the number of macros offered to a search
+     */
+    public MacroLibrary(String file, int minFrequency, int maxLength, int limit) {
+        this.file = file == null ? null : Paths.get(file);
+        this.minFrequency = minFrequency;
+        this.maxLength = maxLength;
+        this.limit = limit;
+        load();
+    }
+
+    /**
+     * Counts every sub-path of two or more consecutive services of the path.
+     */
+    public synchronized void record(List<ServiceFunction> path) {
+        for (int length = 2; length <= Math.min(maxLength, path.size()); length++) {
+            for (int start = 0; start + length <= path.size(); start++) {
+                List<String> names = new ArrayList<>();
+                for (ServiceFunction function : path.subList(start, start + length)) {
+                    names.add(function.name);
+                }
+                counts.merge(names, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * @return the function names of the most frequent macros, most frequent first
+     */
+    public synchronized List<List<String>> macros() {
+        List<Map.Entry<List<String>, Integer>> frequent = new ArrayList<>();
+        for (Map.Entry<List<String>, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() >= minFrequency) {
+                frequent.add(entry);
+            }
+        }
+        // stable, so macros with equal counts keep the order they were first seen in
+        frequent.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        List<List<String>> macros = new ArrayList<>();
+        for (Map.Entry<List<String>, Integer> entry : frequent.subList(0, Math.min(limit, frequent.size()))) {
+            macros.add(entry.getKey());
+        }
+        return macros;
+    }
+
+    public synchronized int getCount(List<String> functions) {
+        return counts.getOrDefault(functions, 0);
+    }
+
+    /**
+     * Writes the recorded sub-paths to the file.
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        List<MacroEntry> entries = new ArrayList<>();
+        for (Map.Entry<List<String>, Integer> entry : counts.entrySet()) {
+            MacroEntry macro = new MacroEntry();
+            macro.functions = entry.getKey();
+            macro.count = entry.getValue();
+            entries.add(macro);
+        }
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            // write to a temporary file first, so readers never see a partial file
+            Path temp = Files.createTempFile(directory, "macros", ".tmp");
+            mapper.writeValue(temp.toFile(), entries);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // macros are an optimization, a failed write must not fail the run
+            System.err.println("Could not write macro-operators: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (file == null) {
+            return;
+        }
+        File source = file.toFile();
+        if (!source.isFile()) {
+            return;
+        }
+        try {
+            for (MacroEntry entry : mapper.readValue(source, MacroEntry[].class)) {
+                if (entry.functions != null && entry.functions.size() >= 2) {
+                    counts.merge(entry.functions, entry.count, Integer::sum);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable macro-operators " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.util.LongHashSet;
+import io.github.raphaelmayer.util.LongIntHashMap;
+import io.github.raphaelmayer.util.LongMinHeap;
+
+/**
+ * Uniform-cost search over the services and the macro-operators of the
+ * problem (see {@link MacroLibrary}), where a macro costs as many steps as it
+ * has services. The path therefore has as few services as the one BFS finds.
+ * A macro reaches a goal several levels deep early, though, and once a path is
+ * known, no node that cannot lead to a shorter one is expanded, which saves
+ * most of the last level. The returned path lists the services of every
+ * macro, so it looks like any other service path.
+ *
+ * Without macros this expands the same nodes as BFS, in the same order.
+ */
+public class MacroSearch implements SearchStrategy {
+
+    public static final String NAME = "macro";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        // Tree operators from operatorCount() on stand for the macro op - operatorCount()
+        int macroBase = problem.operatorCount();
+        SearchTree tree = new SearchTree();
+        // ordered by the number of services, then by insertion, like the BFS frontier
+        LongMinHeap open = new LongMinHeap();
+        LongIntHashMap bestCost = new LongIntHashMap(Integer.MAX_VALUE);
+        LongHashSet closed = new LongHashSet();
+        SearchStats stats = new SearchStats();
+        int[] costs = new int[1024];
+        int[] applicable = new int[problem.operatorCount()];
+
+        int root = tree.add(problem.start(), SearchTree.ROOT, -1);
+        bestCost.put(problem.start(), 0);
+        open.add(LongMinHeap.entry(0, root));
+        stats.nodeStored();
+        if (problem.isGoal(problem.start())) {
+            return SearchResult.found(path(tree, root, problem), stats);
+        }
+
+        int goal = -1;
+        while (!open.isEmpty()) {
+            int node = LongMinHeap.node(open.poll());
+            // every successor takes at least one more service than the node
+            if (goal >= 0 && costs[node] + 1 >= costs[goal]) {
+                break;
+            }
+            long currentState = tree.state(node);
+            if (!closed.add(currentState)) {
+                continue; // a cheaper copy of this state was expanded already
+            }
+            stats.nodeExpanded();
+
+            long started = System.nanoTime();
+            int count = problem.applicableOperators(currentState, applicable);
+            long applied = System.nanoTime();
+            stats.canApplyTime(applied - started);
+            stats.successorsGenerated(count);
+
+            for (int i = 0; i < problem.macroCount() + count; i++) {
+                int op;
+                long nextState;
+                int cost;
+                if (i < problem.macroCount()) {
+                    if (!problem.canApplyMacro(i, currentState)) {
+                        continue;
+                    }
+                    stats.successorsGenerated(1);
+                    op = macroBase + i;
+                    nextState = problem.applyMacro(i, currentState);
+                    cost = costs[node] + problem.macroOperators(i).length;
+                } else {
+                    op = applicable[i - problem.macroCount()];
+                    nextState = problem.apply(op, currentState);
+                    cost = costs[node] + 1;
+                }
+
+                if (closed.contains(nextState) || bestCost.get(nextState) <= cost) {
+                    stats.duplicateSkipped();
+                    continue;
+                }
+                if (!problem.canReachGoal(nextState)) {
+                    continue;
+                }
+                bestCost.put(nextState, cost);
+                int next = tree.add(nextState, node, op);
+                if (next == costs.length) {
+                    costs = Arrays.copyOf(costs, costs.length << 1);
+                }
+                costs[next] = cost;
+                stats.nodeStored();
+
+                if (problem.isGoal(nextState)) {
+                    if (goal < 0 || cost < costs[goal]) {
+                        goal = next;
+                    }
+                    continue;
+                }
+                open.add(LongMinHeap.entry(cost, next));
+                stats.frontierSize(open.size());
+            }
+            stats.applyTime(System.nanoTime() - applied);
+        }
+
+        return goal >= 0 ? SearchResult.found(path(tree, goal, problem), stats) : SearchResult.notFound(stats);
+    }
+
+    /**
+     * @return the services leading to the node, with every macro expanded
+     */
+    private static List<ServiceFunction> path(SearchTree tree, int node, SearchProblem problem) {
+        List<ServiceFunction> path = new ArrayList<>();
+        for (int op : tree.operatorPath(node)) {
+            if (op < problem.operatorCount()) {
+                path.add(problem.function(op));
+                continue;
+            }
+            for (int step : problem.macroOperators(op - problem.operatorCount())) {
+                path.add(problem.function(step));
+            }
+        }
+        return path;
+    }
+}
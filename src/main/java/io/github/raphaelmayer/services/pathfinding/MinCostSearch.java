@@ -0,0 +1,111 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.Arrays;
+
+import io.github.raphaelmayer.util.LongHashSet;
+import io.github.raphaelmayer.util.LongIntHashMap;
+import io.github.raphaelmayer.util.LongMinHeap;
+
+/**
+ * A* search over estimated service costs instead of hop counts (Dijkstra, if
+ * the heuristic estimates 0). It returns the path with the lowest total
+ * {@link Objective} cost, e.g. the fastest path, which may take more services
+ * than the shortest one.
+ *
+ * The hop heuristic stays admissible when it is multiplied by the cost of the
+ * cheapest service, since every remaining step costs at least that much.
+ */
+public class MinCostSearch implements SearchStrategy {
+
+    public static final String FASTEST = "fastest";
+    public static final String CHEAPEST = "cheapest";
+
+    private final Objective objective;
+    private final Heuristic heuristic;
+
+    public MinCostSearch(Objective objective, Heuristic heuristic) {
+        this.objective = objective;
+        this.heuristic = heuristic;
+    }
+
+    public MinCostSearch(Objective objective) {
+        this(objective, new MismatchedAttributesHeuristic());
+    }
+
+    @Override
+    public String getName() {
+        return objective == Objective.LATENCY ? FASTEST : CHEAPEST;
+    }
+
+    public Objective getObjective() {
+        return objective;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        SearchTree tree = new SearchTree();
+        LongMinHeap open = new LongMinHeap();
+        LongIntHashMap bestCost = new LongIntHashMap(Integer.MAX_VALUE);
+        LongHashSet closed = new LongHashSet();
+        SearchStats stats = new SearchStats();
+        int[] costs = new int[1024];
+        int[] applicable = new int[problem.operatorCount()];
+        int[] operatorCosts = objective.operatorCosts(problem);
+        int minCost = Objective.min(operatorCosts);
+
+        int root = tree.add(problem.start(), SearchTree.ROOT, -1);
+        bestCost.put(problem.start(), 0);
+        open.add(LongMinHeap.entry(estimate(heuristic, problem, problem.start(), minCost), root));
+        stats.nodeStored();
+
+        while (!open.isEmpty()) {
+            int node = LongMinHeap.node(open.poll());
+            long state = tree.state(node);
+            if (!closed.add(state)) {
+                continue; // a cheaper copy of this state was expanded already
+            }
+            if (problem.isGoal(state)) {
+                return SearchResult.found(tree.path(node, problem), stats);
+            }
+            stats.nodeExpanded();
+
+            long started = System.nanoTime();
+            int count = problem.applicableOperators(state, applicable);
+            long applied = System.nanoTime();
+            stats.canApplyTime(applied - started);
+            stats.successorsGenerated(count);
+            for (int i = 0; i < count; i++) {
+                int op = applicable[i];
+                long nextState = problem.apply(op, state);
+                int cost = Objective.add(costs[node], operatorCosts[op]);
+                if (closed.contains(nextState) || bestCost.get(nextState) <= cost) {
+                    stats.duplicateSkipped();
+                    continue;
+                }
+                if (!problem.canReachGoal(nextState)) {
+                    continue;
+                }
+                bestCost.put(nextState, cost);
+                int next = tree.add(nextState, node, op);
+                if (next == costs.length) {
+                    costs = Arrays.copyOf(costs, costs.length << 1);
+                }
+                costs[next] = cost;
+                open.add(LongMinHeap.entry(Objective.add(cost, estimate(heuristic, problem, nextState, minCost)), next));
+                stats.nodeStored();
+                stats.frontierSize(open.size());
+            }
+            stats.applyTime(System.nanoTime() - applied);
+        }
+
+        return SearchResult.notFound(stats);
+    }
+
+    /**
+     * Scales the hop estimate of the heuristic to a cost estimate.
+     */
+    static int estimate(Heuristic heuristic, SearchProblem problem, long state, int minCost) {
+        long estimate = (long) heuristic.estimate(problem, state) * minCost;
+        return (int) Math.min(Integer.MAX_VALUE, estimate);
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+/**
+ * Counts the target attributes the state does not match yet. A single service
+ * can fix at most as many attributes as it writes, so the count is divided by
+ * the largest number of attributes any service writes. This keeps the estimate
+ * admissible and consistent.
+ */
+public class MismatchedAttributesHeuristic implements Heuristic {
+
+    @Override
+    public int estimate(SearchProblem problem, long state) {
+        int mismatched = problem.mismatchedKeys(state);
+        if (mismatched == 0) {
+            return 0;
+        }
+        int perStep = Math.max(1, problem.maxWrittenKeys());
+        return (mismatched + perStep - 1) / perStep;
+    }
+}
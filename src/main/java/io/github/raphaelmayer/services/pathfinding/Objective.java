@@ -0,0 +1,122 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.List;
+import java.util.Locale;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.util.Constants;
+
+/**
+ * A cost the weighted search strategies minimize. Costs are estimates per
+ * service invocation, taken from the optional latency and price annotations of
+ * a function or, without them, derived from its config and limits. They are
+ * integers so the strategies can keep them in primitive heaps.
+ */
+public enum Objective {
+
+    /**
+     * The processing time in milliseconds: the latency annotation, or else the
+     * worst case of the function, the longer of its timeout and its
+     * maxDuration limit (e.g. the longest media file a transcription accepts).
+     */
+    LATENCY {
+        @Override
+        public int cost(ServiceFunction function) {
+            if (function.latency != null) {
+                return toUnits(function.latency * 1000);
+            }
+            int timeout = function.config != null && function.config.timeout != null ? function.config.timeout
+                    : Constants.LAMBDA_DEFAULT_TIMEOUT;
+            double seconds = timeout;
+            Object maxDuration = function.limits == null ? null : function.limits.get("maxDuration");
+            if (maxDuration instanceof Number) {
+                seconds = Math.max(seconds, ((Number) maxDuration).doubleValue());
+            }
+            return toUnits(seconds * 1000);
+        }
+
+        @Override
+        public String format(long cost) {
+            return String.format(Locale.ROOT, "%.1f s", cost / 1000.0);
+        }
+    },
+
+    /**
+     * The price in micro-dollars: the price annotation, or else the Lambda price
+     * of running the function with its configured memory for its latency.
+     */
+    PRICE {
+        @Override
+        public int cost(ServiceFunction function) {
+            if (function.price != null) {
+                return toUnits(function.price * 1e6);
+            }
+            int memory = function.config != null && function.config.memory != null ? function.config.memory
+                    : Constants.LAMBDA_DEFAULT_MEMORY;
+            double seconds = LATENCY.cost(function) / 1000.0;
+            double usd = memory / 1024.0 * seconds * Constants.LAMBDA_PRICE_PER_GB_SECOND
+                    + Constants.LAMBDA_PRICE_PER_REQUEST;
+            return toUnits(usd * 1e6);
+        }
+
+        @Override
+        public String format(long cost) {
+            return String.format(Locale.ROOT, "$%.6f", cost / 1e6);
+        }
+    };
+
+    /**
+     * @return the estimated cost of one invocation of the function, at least 1
+     */
+    public abstract int cost(ServiceFunction function);
+
+    /**
+     * @return the cost in a human-readable form, with its unit
+     */
+    public abstract String format(long cost);
+
+    /**
+     * @return the estimated cost of every operator of the problem, by operator
+     */
+    public int[] operatorCosts(SearchProblem problem) {
+        int[] costs = new int[problem.operatorCount()];
+        for (int op = 0; op < costs.length; op++) {
+            costs[op] = cost(problem.function(op));
+        }
+        return costs;
+    }
+
+    /**
+     * @return the estimated cost of running all services of the path
+     */
+    public long pathCost(List<ServiceFunction> path) {
+        long total = 0;
+        for (ServiceFunction function : path) {
+            total += cost(function);
+        }
+        return total;
+    }
+
+    /**
+     * Adds two costs, saturating at Integer.MAX_VALUE instead of overflowing.
+     */
+    static int add(int cost, int other) {
+        long sum = (long) cost + other;
+        return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    /**
+     * @return the smallest of the costs, or 0 if there are none
+     */
+    static int min(int[] costs) {
+        int min = costs.length == 0 ? 0 : Integer.MAX_VALUE;
+        for (int cost : costs) {
+            min = Math.min(min, cost);
+        }
+        return min;
+    }
+
+    private static int toUnits(double value) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.ceil(value)));
+    }
+}
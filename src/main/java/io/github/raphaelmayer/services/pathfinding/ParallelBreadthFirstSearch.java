@@ -0,0 +1,185 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import io.github.raphaelmayer.util.ConcurrentLongMinMap;
+import io.github.raphaelmayer.util.LongHashSet;
+
+/**
+ * Level-synchronous parallel breadth-first search for large ontologies. The
+ * nodes of a level are split into chunks that are expanded on a fork-join pool,
+ * checking every service against every state concurrently.
+ *
+ * The result is the same shortest path sequential BFS returns: every generated
+ * state gets a rank from its position in sequential generation order (parent
+ * node, then service), and a concurrent min-map keeps the smallest rank per
+ * state. The level is then merged in rank order, so the tree is built exactly
+ * as the sequential search would build it, independent of thread timing.
+ */
+public class ParallelBreadthFirstSearch implements SearchStrategy {
+
+    public static final String NAME = "parallel-bfs";
+
+    // chunks per worker, so uneven chunks still keep all workers busy
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+
+    public ParallelBreadthFirstSearch(int parallelism) {
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        SearchTree tree = new SearchTree();
+        LongHashSet visited = new LongHashSet();
+        ConcurrentLongMinMap claims = new ConcurrentLongMinMap(parallelism);
+        SearchStats stats = new SearchStats();
+
+        int root = tree.add(problem.start(), SearchTree.ROOT, -1);
+        visited.add(problem.start());
+        stats.nodeStored();
+        if (problem.isGoal(problem.start())) {
+            return SearchResult.found(tree.path(root, problem), stats);
+        }
+
+        int levelStart = 0;
+        while (levelStart < tree.size()) {
+            int levelEnd = tree.size();
+            for (Successors successors : expandLevel(problem, tree, visited, claims, levelStart, levelEnd)) {
+                stats.add(successors.stats);
+                // merge in sequential generation order, keeping the first generator of each state
+                for (int i = 0; i < successors.size; i++) {
+                    long state = successors.states[i];
+                    if (claims.get(state) != successors.ranks[i]) {
+                        stats.duplicateSkipped();
+                        continue;
+                    }
+                    int next = tree.add(state, successors.parents[i], successors.operators[i]);
+                    visited.add(state);
+                    stats.nodeStored();
+                    if (problem.isGoal(state)) {
+                        return SearchResult.found(tree.path(next, problem), stats);
+                    }
+                }
+            }
+            stats.frontierSize(tree.size() - levelEnd);
+            claims.clear();
+            levelStart = levelEnd;
+        }
+
+        return SearchResult.notFound(stats);
+    }
+
+    private List<Successors> expandLevel(SearchProblem problem, SearchTree tree, LongHashSet visited,
+            ConcurrentLongMinMap claims, int levelStart, int levelEnd) {
+        int levelSize = levelEnd - levelStart;
+        int chunks = Math.min(levelSize, parallelism * CHUNKS_PER_WORKER);
+        if (chunks <= 1) {
+            List<Successors> result = new ArrayList<>();
+            result.add(expand(problem, tree, visited, claims, levelStart, levelEnd));
+            return result;
+        }
+
+        List<Callable<Successors>> tasks = new ArrayList<>();
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int from = levelStart + (int) ((long) levelSize * chunk / chunks);
+            int to = levelStart + (int) ((long) levelSize * (chunk + 1) / chunks);
+            tasks.add(() -> expand(problem, tree, visited, claims, from, to));
+        }
+        List<Successors> result = new ArrayList<>();
+        try {
+            for (Future<Successors> future : pool.invokeAll(tasks)) {
+                result.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while expanding a search level", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Expands the nodes [from, to). Runs concurrently with other chunks of the
+     * same level, the tree and the visited set are only read.
+     */
+    private static Successors expand(SearchProblem problem, SearchTree tree, LongHashSet visited,
+            ConcurrentLongMinMap claims, int from, int to) {
+        Successors successors = new Successors();
+        int[] applicable = new int[problem.operatorCount()];
+        for (int node = from; node < to; node++) {
+            long state = tree.state(node);
+            successors.stats.nodeExpanded();
+            long started = System.nanoTime();
+            int count = problem.applicableOperators(state, applicable);
+            long applied = System.nanoTime();
+            successors.stats.canApplyTime(applied - started);
+            successors.stats.successorsGenerated(count);
+            for (int i = 0; i < count; i++) {
+                long nextState = problem.apply(applicable[i], state);
+                if (!problem.canReachGoal(nextState)) {
+                    continue;
+                }
+                if (visited.contains(nextState)) {
+                    successors.stats.duplicateSkipped();
+                    continue;
+                }
+                // the rank orders successors as sequential BFS generates them
+                long rank = ((long) node << 32) | i;
+                if (claims.claim(nextState, rank)) {
+                    successors.add(nextState, node, applicable[i], rank);
+                } else {
+                    successors.stats.duplicateSkipped();
+                }
+            }
+            successors.stats.applyTime(System.nanoTime() - applied);
+        }
+        return successors;
+    }
+
+    /**
+     * The states generated by one chunk in generation order, with the stats of
+     * the chunk.
+     */
+    private static class Successors {
+
+        private long[] states = new long[16];
+        private int[] parents = new int[16];
+        private int[] operators = new int[16];
+        private long[] ranks = new long[16];
+        private int size;
+        private final SearchStats stats = new SearchStats();
+
+        void add(long state, int parent, int operator, long rank) {
+            if (size == states.length) {
+                states = Arrays.copyOf(states, size << 1);
+                parents = Arrays.copyOf(parents, size << 1);
+                operators = Arrays.copyOf(operators, size << 1);
+                ranks = Arrays.copyOf(ranks, size << 1);
+            }
+            states[size] = state;
+            parents[size] = parent;
+            operators[size] = operator;
+            ranks[size] = rank;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.util.LongIntHashMap;
+import io.github.raphaelmayer.util.LongMinHeap;
+
+/**
+ * Multi-objective search over estimated latency and price. Instead of a single
+ * path it returns the Pareto front: every path for which no other path is both
+ * at least as fast and at least as cheap. The fastest path is the primary
+ * result, the others are alternatives trading time for money.
+ *
+ * A state may be reached by several non-dominated labels (latency, price), so
+ * the search keeps a list of labels per state instead of a single best cost.
+ * Labels are expanded in order of their latency lower bound; a label is dropped
+ * as soon as a path on the front dominates its lower bounds. The number of
+ * labels is limited by a node budget.
+ */
+public class ParetoSearch implements SearchStrategy {
+
+    public static final String NAME = "pareto";
+
+    private static final int NONE = -1;
+
+    private final int nodeBudget;
+    private final Heuristic heuristic;
+
+    public ParetoSearch(int nodeBudget, Heuristic heuristic) {
+        this.nodeBudget = nodeBudget;
+        this.heuristic = heuristic;
+    }
+
+    public ParetoSearch(int nodeBudget) {
+        this(nodeBudget, new MismatchedAttributesHeuristic());
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public SearchResult search(SearchProblem problem) {
+        return new Run(problem).search();
+    }
+
+    /**
+     * The state of one search. Every tree node is a label, labels of the same
+     * state are chained through nextLabel.
+     */
+    private class Run {
+
+        private final SearchProblem problem;
+        private final int[] latencies;
+        private final int[] prices;
+        private final int minLatency;
+        private final int minPrice;
+
+        private final SearchTree tree = new SearchTree();
+        private final LongMinHeap open = new LongMinHeap();
+        private final LongIntHashMap firstLabel = new LongIntHashMap(NONE);
+        private final SearchStats stats = new SearchStats();
+        private final List<Integer> front = new ArrayList<>();
+        private int[] latency = new int[1024];
+        private int[] price = new int[1024];
+        private int[] nextLabel = new int[1024];
+        private boolean[] dominated = new boolean[1024];
+
+        Run(SearchProblem problem) {
+            this.problem = problem;
+            this.latencies = Objective.LATENCY.operatorCosts(problem);
+            this.prices = Objective.PRICE.operatorCosts(problem);
+            this.minLatency = Objective.min(latencies);
+            this.minPrice = Objective.min(prices);
+        }
+
+        SearchResult search() {
+            int[] applicable = new int[problem.operatorCount()];
+            addLabel(problem.start(), SearchTree.ROOT, -1, 0, 0);
+
+            boolean exhausted = false;
+            while (!open.isEmpty()) {
+                int node = LongMinHeap.node(open.poll());
+                if (dominated[node]) {
+                    continue;
+                }
+                long state = tree.state(node);
+                if (problem.isGoal(state)) {
+                    // labels leave the heap by latency, so a goal label that is not
+                    // dominated by the front is at least cheaper than all of it
+                    if (!frontDominates(latency[node], price[node])) {
+                        front.removeIf(goal -> latency[node] <= latency[goal] && price[node] <= price[goal]);
+                        front.add(node);
+                    }
+                    continue;
+                }
+                if (frontDominates(Objective.add(latency[node], estimate(state, minLatency)),
+                        Objective.add(price[node], estimate(state, minPrice)))) {
+                    continue;
+                }
+                if (tree.size() >= nodeBudget) {
+                    exhausted = true;
+                    break;
+                }
+                stats.nodeExpanded();
+
+                long started = System.nanoTime();
+                int count = problem.applicableOperators(state, applicable);
+                long applied = System.nanoTime();
+                stats.canApplyTime(applied - started);
+                stats.successorsGenerated(count);
+                for (int i = 0; i < count; i++) {
+                    int op = applicable[i];
+                    long nextState = problem.apply(op, state);
+                    if (!problem.canReachGoal(nextState)) {
+                        continue;
+                    }
+                    int nextLatency = Objective.add(latency[node], latencies[op]);
+                    int nextPrice = Objective.add(price[node], prices[op]);
+                    if (labelDominates(nextState, nextLatency, nextPrice)
+                            || frontDominates(Objective.add(nextLatency, estimate(nextState, minLatency)),
+                                    Objective.add(nextPrice, estimate(nextState, minPrice)))) {
+                        stats.duplicateSkipped();
+                        continue;
+                    }
+                    addLabel(nextState, node, op, nextLatency, nextPrice);
+                }
+                stats.applyTime(System.nanoTime() - applied);
+            }
+
+            if (front.isEmpty()) {
+                return exhausted ? SearchResult.budgetExhausted(stats) : SearchResult.notFound(stats);
+            }
+            front.sort((a, b) -> latency[a] != latency[b] ? Integer.compare(latency[a], latency[b])
+                    : Integer.compare(price[a], price[b]));
+            List<List<ServiceFunction>> paths = new ArrayList<>();
+            for (int goal : front) {
+                paths.add(tree.path(goal, problem));
+            }
+            return SearchResult.paretoFront(paths, stats, !exhausted);
+        }
+
+        private int estimate(long state, int minCost) {
+            return MinCostSearch.estimate(heuristic, problem, state, minCost);
+        }
+
+        private boolean frontDominates(int latencyBound, int priceBound) {
+            for (int goal : front) {
+                if (latency[goal] <= latencyBound && price[goal] <= priceBound) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return true if a label of the state is at least as fast and as cheap
+         */
+        private boolean labelDominates(long state, int stateLatency, int statePrice) {
+            for (int label = firstLabel.get(state); label != NONE; label = nextLabel[label]) {
+                if (latency[label] <= stateLatency && price[label] <= statePrice) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds a label and drops the labels of the same state it dominates.
+         */
+        private void addLabel(long state, int parent, int op, int stateLatency, int statePrice) {
+            int head = NONE;
+            int tail = NONE;
+            for (int label = firstLabel.get(state); label != NONE; label = nextLabel[label]) {
+                if (stateLatency <= latency[label] && statePrice <= price[label]) {
+                    dominated[label] = true;
+                    continue;
+                }
+                if (tail == NONE) {
+                    head = label;
+                } else {
+                    nextLabel[tail] = label;
+                }
+                tail = label;
+            }
+            if (tail != NONE) {
+                nextLabel[tail] = NONE;
+            }
+
+            int node = tree.add(state, parent, op);
+            if (node == latency.length) {
+                latency = Arrays.copyOf(latency, node << 1);
+                price = Arrays.copyOf(price, node << 1);
+                nextLabel = Arrays.copyOf(nextLabel, node << 1);
+                dominated = Arrays.copyOf(dominated, node << 1);
+            }
+            latency[node] = stateLatency;
+            price[node] = statePrice;
+            nextLabel[node] = head;
+            firstLabel.put(state, node);
+            open.add(LongMinHeap.entry(Objective.add(stateLatency, estimate(state, minLatency)), node));
+            stats.nodeStored();
+            stats.frontierSize(open.size());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+/**
+ * Runtime constraints of a planning request, taken from the input of the
+ * transformation, and the functions they rule out:
+ * <ul>
+ * <li>region: functions that list regions must be available in it</li>
+ * <li>fileSize (MB) and duration (seconds) of the largest input file: they must
+ * not exceed the maxFileSize and maxDuration limits of a function, unless the
+ * input is split into chunks first</li>
+ * <li>fileCount (or the number of fileNames): the files are processed in
+ * parallel, so they must not exceed the rateLimit (or rateLimitBatch) of a
+ * function</li>
+ * </ul>
+ * Limits that are not numbers (e.g. empty strings) do not constrain anything.
+ */
+public class PlanningConstraints {
+
+    private final String region;
+    private final Double fileSize;
+    private final Double duration;
+    private final int fileCount;
+    private final boolean split;
+
+    public PlanningConstraints(String region, Double fileSize, Double duration, int fileCount, boolean split) {
+        this.region = region;
+        this.fileSize = fileSize;
+        this.duration = duration;
+        this.fileCount = fileCount;
+        this.split = split;
+    }
+
+    /**
+     * Reads the constraints from the input state. The input counts as split if
+     * the ontology has a split function for its type, since the planner always
+     * inserts it.
+     */
+    public static PlanningConstraints fromInput(CompiledOntology ontology, Map<String, Object> inputState) {
+        Object region = inputState.get("region");
+        int fileCount = 0;
+        Object count = inputState.get("fileCount");
+        Object fileNames = inputState.get("fileNames");
+        if (count instanceof Number) {
+            fileCount = ((Number) count).intValue();
+        } else if (fileNames instanceof Collection) {
+            fileCount = ((Collection<?>) fileNames).size();
+        }
+        Object type = inputState.get("type");
+        boolean split = type != null && ontology.findFunctionByType("Split", type) != null;
+        return new PlanningConstraints(region instanceof String ? (String) region : null,
+                number(inputState.get("fileSize")), number(inputState.get("duration")), fileCount, split);
+    }
+
+    /**
+     * @return why the constraints rule out the function, or null if it may be used
+     */
+    public String violation(ServiceFunction function) {
+        if (region != null && function.regions != null && !function.regions.isEmpty()
+                && !function.regions.contains(region)) {
+            return "not available in " + region;
+        }
+        Map<String, Object> limits = function.limits;
+        if (limits == null) {
+            return null;
+        }
+        Double maxFileSize = number(limits.get("maxFileSize"));
+        if (!split && fileSize != null && maxFileSize != null && fileSize > maxFileSize) {
+            return "accepts files up to " + maxFileSize + " MB";
+        }
+        Double maxDuration = number(limits.get("maxDuration"));
+        if (!split && duration != null && maxDuration != null && duration > maxDuration) {
+            return "accepts files up to " + maxDuration + " s long";
+        }
+        Double rateLimit = number(limits.get("rateLimit"));
+        if (rateLimit == null) {
+            rateLimit = number(limits.get("rateLimitBatch"));
+        }
+        if (rateLimit != null && fileCount > rateLimit) {
+            return "allows " + rateLimit.intValue() + " concurrent requests, but there are " + fileCount
+                    + " files";
+        }
+        return null;
+    }
+
+    /**
+     * @return the functions the constraints rule out, by name, with the reason
+     */
+    public Map<String, String> violations(CompiledOntology ontology) {
+        Map<String, String> violations = new LinkedHashMap<>();
+        for (ServiceFunction function : ontology.getFunctions()) {
+            String violation = violation(function);
+            if (violation != null) {
+                violations.put(function.name, violation);
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * @return the excluded functions by ontology index, or null if every
+     *         function may be used
+     */
+    public boolean[] excludedFunctions(CompiledOntology ontology) {
+        boolean[] excluded = null;
+        for (int function = 0; function < ontology.size(); function++) {
+            if (violation(ontology.function(function)) != null) {
+                if (excluded == null) {
+                    excluded = new boolean[ontology.size()];
+                }
+                excluded[function] = true;
+            }
+        }
+        return excluded;
+    }
+
+    private static Double number(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "PlanningConstraints{" +
+                "region=" + region +
+                ", fileSize=" + fileSize +
+                ", duration=" + duration +
+                ", fileCount=" + fileCount +
+                ", split=" + split +
+                '}';
+    }
+}
@@ -0,0 +1,549 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+/**
+ * A single planning request compiled against a {@link CompiledOntology}. The
+ * input requirements of the functions are shared by all requests, only the
+ * outputs depend on the target: every function becomes one operator per output
+ * value it may write, each with a write mask, so checking and applying a service
+ * are a few bit operations on a long.
+ *
+ * Output values that another output value of the same function dominates (see
+ * {@link CompiledOntology#dominates(int, int, int)}) get no operator of their
+ * own, which keeps the branching factor close to one operator per function. The
+ * target value is always kept.
+ *
+ * Functions ruled out by {@link PlanningConstraints} get no operators and are
+ * left out of the reachability checks, so requests that only excluded functions
+ * could serve are infeasible without searching.
+ */
+public class SearchProblem {
+
+    private final CompiledOntology ontology;
+    private final StateEncoder encoder;
+    private final long start;
+    private final long goalMask;
+    private final long goalBits;
+    private final boolean feasible;
+    private final int[] goalKeys;
+    // reachesGoal[i] holds the codes of goalKeys[i] from which its target code is
+    // still reachable, fromStart[key] the codes reachable from the input
+    private final long[][] reachesGoal;
+    private final long[][] fromStart;
+    // the functions ruled out by the constraints, null if there are none
+    private final boolean[] excluded;
+
+    // Operator i belongs to ontology.function(operatorFunctions[i]), the operators
+    // of function f are [firstOperator[f], firstOperator[f + 1])
+    private final int[] operatorFunctions;
+    private final int[] firstOperator;
+    private final long[] writeMasks;
+    private final long[] writeBits;
+    private final int maxWrittenKeys;
+    // producers[key][code] lists the operators that write that code
+    private final int[][][] producers;
+
+    // macros[m] lists the operators a macro-operator applies in order
+    private int[][] macros = new int[0][];
+
+    private boolean verbose;
+
+    public SearchProblem(CompiledOntology ontology, Map<String, Object> inputState,
+            Map<String, Object> targetState) {
+        this(ontology, inputState, targetState, true);
+    }
+
+    /**
+     * @param branchOnOutputs if false, every function writes the target value if
+     *                        it can produce it and its first output value
+     *                        otherwise, which was the behaviour before the search
+     *                        branched over the output values
+     */
+    public SearchProblem(CompiledOntology ontology, Map<String, Object> inputState,
+            Map<String, Object> targetState, boolean branchOnOutputs) {
+        this(ontology, inputState, targetState, branchOnOutputs, (boolean[]) null);
+    }
+
+    /**
+     * Plans only with the functions the constraints allow.
+     */
+    public SearchProblem(CompiledOntology ontology, Map<String, Object> inputState,
+            Map<String, Object> targetState, PlanningConstraints constraints) {
+        this(ontology, inputState, targetState, true, constraints);
+    }
+
+    /**
+     * Plans only with the functions the constraints allow, e.g. to compare both
+     * ways of writing output values on the same requests.
+     *
+     * @see #SearchProblem(CompiledOntology, Map, Map, boolean)
+     */
+    public SearchProblem(CompiledOntology ontology, Map<String, Object> inputState,
+            Map<String, Object> targetState, boolean branchOnOutputs, PlanningConstraints constraints) {
+        this(ontology, inputState, targetState, branchOnOutputs, constraints.excludedFunctions(ontology));
+    }
+
+    private SearchProblem(CompiledOntology ontology, Map<String, Object> inputState,
+            Map<String, Object> targetState, boolean branchOnOutputs, boolean[] excluded) {
+        this.ontology = ontology;
+        this.excluded = excluded;
+        this.encoder = ontology.getEncoder();
+        this.start = encoder.encode(inputState);
+
+        long mask = 0L;
+        long bits = 0L;
+        boolean satisfiable = true;
+        List<Integer> targetKeys = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : targetState.entrySet()) {
+            int key = encoder.keyIndex(entry.getKey());
+            if (key < 0) {
+                // No function touches this key, so it has to match from the start
+                satisfiable &= Objects.equals(inputState.get(entry.getKey()), entry.getValue());
+                continue;
+            }
+            int code = encoder.code(key, entry.getValue());
+            if (code == StateEncoder.UNKNOWN && !Objects.equals(inputState.get(entry.getKey()), entry.getValue())) {
+                // No function produces this value and the input does not carry it either
+                satisfiable = false;
+            }
+            mask |= encoder.fieldMask(key);
+            bits = encoder.set(bits, key, code);
+            targetKeys.add(key);
+        }
+        this.goalKeys = targetKeys.stream().mapToInt(Integer::intValue).toArray();
+        this.goalMask = mask;
+        this.goalBits = bits;
+
+        long[][][] reachable = ontology.reachability(excluded);
+        this.fromStart = new long[encoder.keyCount()][];
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            fromStart[key] = reachable[key][encoder.get(start, key)];
+        }
+        this.reachesGoal = new long[goalKeys.length][];
+        for (int i = 0; i < goalKeys.length; i++) {
+            int key = goalKeys[i];
+            int goalCode = encoder.get(goalBits, key);
+            long[] codes = new long[(encoder.cardinality(key) + 63) >>> 6];
+            for (int code = 0; code < encoder.cardinality(key); code++) {
+                if (StateEncoder.contains(reachable[key][code], goalCode)) {
+                    codes[code >>> 6] |= 1L << code;
+                }
+            }
+            reachesGoal[i] = codes;
+            // e.g. a language pair that no chain of services translates between
+            satisfiable &= StateEncoder.contains(fromStart[key], goalCode);
+        }
+        this.feasible = satisfiable;
+
+        List<long[]> operators = new ArrayList<>();
+        List<Integer> functionsOfOperators = new ArrayList<>();
+        this.firstOperator = new int[ontology.size() + 1];
+        for (int function = 0; function < ontology.size(); function++) {
+            firstOperator[function] = operators.size();
+            if (excluded != null && excluded[function]) {
+                continue;
+            }
+            compileOperators(ontology.function(function), targetState, branchOnOutputs, operators);
+            while (functionsOfOperators.size() < operators.size()) {
+                functionsOfOperators.add(function);
+            }
+        }
+        firstOperator[ontology.size()] = operators.size();
+
+        int count = operators.size();
+        this.operatorFunctions = functionsOfOperators.stream().mapToInt(Integer::intValue).toArray();
+        this.writeMasks = new long[count];
+        this.writeBits = new long[count];
+        for (int op = 0; op < count; op++) {
+            writeMasks[op] = operators.get(op)[0];
+            writeBits[op] = operators.get(op)[1];
+        }
+
+        List<List<List<Integer>>> producing = new ArrayList<>();
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            List<List<Integer>> byCode = new ArrayList<>();
+            for (int code = 0; code < encoder.cardinality(key); code++) {
+                byCode.add(new ArrayList<>());
+            }
+            producing.add(byCode);
+        }
+
+        int maxWritten = 0;
+        for (int op = 0; op < count; op++) {
+            int written = 0;
+            for (int key = 0; key < encoder.keyCount(); key++) {
+                if ((writeMasks[op] & encoder.fieldMask(key)) != 0) {
+                    producing.get(key).get(encoder.get(writeBits[op], key)).add(op);
+                    written++;
+                }
+            }
+            maxWritten = Math.max(maxWritten, written);
+        }
+        this.maxWrittenKeys = maxWritten;
+
+        this.producers = new int[encoder.keyCount()][][];
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            producers[key] = new int[encoder.cardinality(key)][];
+            for (int code = 0; code < encoder.cardinality(key); code++) {
+                producers[key][code] = producing.get(key).get(code).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    /**
+     * Adds one operator (write mask, write bits) per combination of the output
+     * values the service may write.
+     */
+    private void compileOperators(ServiceFunction service, Map<String, Object> targetState,
+            boolean branchOnOutputs, List<long[]> operators) {
+        List<Integer> keys = new ArrayList<>();
+        List<int[]> choices = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : service.output.entrySet()) {
+            List<Object> outputValues = StateEncoder.asList(entry.getValue());
+            if (outputValues.isEmpty()) {
+                continue;
+            }
+            int key = encoder.keyIndex(entry.getKey());
+            keys.add(key);
+            choices.add(outputCodes(key, outputValues, targetState.get(entry.getKey()), branchOnOutputs));
+        }
+        expandOperators(keys, choices, 0, 0L, 0L, operators);
+    }
+
+    private void expandOperators(List<Integer> keys, List<int[]> choices, int index, long mask, long bits,
+            List<long[]> operators) {
+        if (index == keys.size()) {
+            operators.add(new long[] { mask, bits });
+            return;
+        }
+        int key = keys.get(index);
+        for (int code : choices.get(index)) {
+            expandOperators(keys, choices, index + 1, mask | encoder.fieldMask(key), encoder.set(bits, key, code),
+                    operators);
+        }
+    }
+
+    /**
+     * @return the codes a service writes for the key, the target value first
+     */
+    private int[] outputCodes(int key, List<Object> outputValues, Object targetValue, boolean branchOnOutputs) {
+        int target = outputValues.contains(targetValue) ? encoder.code(key, targetValue) : -1;
+        if (!branchOnOutputs) {
+            // if the service can transform in one step, apply the final value for the key,
+            // otherwise apply its first possible output
+            return new int[] { target >= 0 ? target : encoder.code(key, outputValues.get(0)) };
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        for (Object value : outputValues) {
+            int code = encoder.code(key, value);
+            if (!candidates.contains(code)) {
+                candidates.add(code);
+            }
+        }
+        List<Integer> kept = new ArrayList<>();
+        if (target >= 0) {
+            kept.add(target);
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            int code = candidates.get(i);
+            if (code != target && !isDominated(key, code, i, candidates, target)) {
+                kept.add(code);
+            }
+        }
+        return kept.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * A value is dropped if another candidate dominates it strictly, or if an
+     * equivalent candidate comes first or is the target value.
+     */
+    private boolean isDominated(int key, int code, int position, List<Integer> candidates, int target) {
+        for (int i = 0; i < candidates.size(); i++) {
+            int other = candidates.get(i);
+            if (other == code || !ontology.dominates(key, other, code)) {
+                continue;
+            }
+            if (other == target || i < position || !ontology.dominates(key, code, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false, if the target can be ruled out without searching
+     */
+    public boolean isFeasible() {
+        return feasible;
+    }
+
+    public long start() {
+        return start;
+    }
+
+    public int operatorCount() {
+        return writeMasks.length;
+    }
+
+    public ServiceFunction function(int op) {
+        return ontology.function(operatorFunctions[op]);
+    }
+
+    public StateEncoder encoder() {
+        return encoder;
+    }
+
+    public CompiledOntology ontology() {
+        return ontology;
+    }
+
+    /**
+     * Offers the macro-operators to strategies that support them. Every function
+     * of a macro is applied with its first operator, which writes the target
+     * value where the function can. Macros with unknown or excluded functions are
+     * skipped.
+     *
+     * @param macros the function names of every macro
+     */
+    public void setMacros(List<List<String>> macros) {
+        List<int[]> compiled = new ArrayList<>();
+        for (List<String> names : macros) {
+            int[] operators = new int[names.size()];
+            for (int i = 0; operators != null && i < operators.length; i++) {
+                int function = ontology.indexOf(names.get(i));
+                if (function < 0 || firstOperator[function] == firstOperator[function + 1]) {
+                    operators = null;
+                } else {
+                    operators[i] = firstOperator[function];
+                }
+            }
+            if (operators != null) {
+                compiled.add(operators);
+            }
+        }
+        this.macros = compiled.toArray(new int[0][]);
+    }
+
+    public int macroCount() {
+        return macros.length;
+    }
+
+    /**
+     * @return the operators the macro applies in order
+     */
+    public int[] macroOperators(int macro) {
+        return macros[macro];
+    }
+
+    /**
+     * Determines if every operator of the macro is applicable to the state the
+     * operators before it leave. A macro is not applicable either if one of its
+     * services would change nothing, or if the goal is reached or out of reach
+     * before its last service, as the macro would only make the path longer.
+     */
+    public boolean canApplyMacro(int macro, long state) {
+        int[] operators = macros[macro];
+        for (int i = 0; i < operators.length; i++) {
+            if (i > 0 && (isGoal(state) || !canReachGoal(state))) {
+                return false;
+            }
+            if (!canApply(operators[i], state)) {
+                return false;
+            }
+            long next = apply(operators[i], state);
+            if (next == state) {
+                return false;
+            }
+            state = next;
+        }
+        return true;
+    }
+
+    /**
+     * Applies the operators of the macro one after another.
+     */
+    public long applyMacro(int macro, long state) {
+        for (int op : macros[macro]) {
+            state = apply(op, state);
+        }
+        return state;
+    }
+
+    /**
+     * Enables tracing of every expanded node and applied service on the console,
+     * for strategies that support it.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    /**
+     * Check if the state matches the target state. All keys in the target state
+     * must match for this to be true.
+     */
+    public boolean isGoal(long state) {
+        return feasible && (state & goalMask) == goalBits;
+    }
+
+    /**
+     * Determines if the operator's input requirements are met by the state.
+     */
+    public boolean canApply(int op, long state) {
+        return ontology.canApply(operatorFunctions[op], state);
+    }
+
+    /**
+     * Collects the operators applicable to the state in ascending order.
+     *
+     * @param buffer receives the operator indices, must hold
+     *               {@link #operatorCount()} entries
+     * @return the number of applicable operators
+     */
+    public int applicableOperators(long state, int[] buffer) {
+        // excluded functions have no operators, so they must not take up the buffer either
+        int functions = ontology.applicableOperators(state, excluded, buffer);
+        int count = 0;
+        for (int i = 0; i < functions; i++) {
+            count += firstOperator[buffer[i] + 1] - firstOperator[buffer[i]];
+        }
+        // every allowed function has at least one operator, so replacing the functions by
+        // their operators back to front never overwrites a function not yet read
+        int end = count;
+        for (int i = functions - 1; i >= 0; i--) {
+            int function = buffer[i];
+            for (int op = firstOperator[function + 1] - 1; op >= firstOperator[function]; op--) {
+                buffer[--end] = op;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Determines if the target may still be reachable from the state. States
+     * holding a value from which a target value can never be produced are dead
+     * ends and need not be explored.
+     */
+    public boolean canReachGoal(long state) {
+        for (int i = 0; i < goalKeys.length; i++) {
+            if (!StateEncoder.contains(reachesGoal[i], encoder.get(state, goalKeys[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if the input state may reach a state matching the pattern's
+     * fixed fields. This is the backward counterpart of
+     * {@link #canReachGoal(long)}.
+     */
+    public boolean reachableFromStart(long values, long wildcards) {
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            if ((wildcards & encoder.fieldMask(key)) == 0
+                    && !StateEncoder.contains(fromStart[key], encoder.get(values, key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies the operator to the state and returns the resulting state.
+     */
+    public long apply(int op, long state) {
+        return (state & ~writeMasks[op]) | writeBits[op];
+    }
+
+    /**
+     * Collects the operators that write at least one of the pattern's fixed
+     * fields with the pattern's value, in ascending order. Only those can lead
+     * into the pattern in a backward search.
+     *
+     * @param buffer receives the operator indices, must hold
+     *               {@link #operatorCount()} * {@link #maxWrittenKeys()} entries
+     * @return the number of operators
+     */
+    public int producingOperators(long values, long wildcards, int[] buffer) {
+        int count = 0;
+        for (int key = 0; key < encoder.keyCount(); key++) {
+            if ((wildcards & encoder.fieldMask(key)) == 0) {
+                for (int op : producers[key][encoder.get(values, key)]) {
+                    buffer[count++] = op;
+                }
+            }
+        }
+        // an operator can produce several fixed fields, keep it once
+        Arrays.sort(buffer, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || buffer[unique - 1] != buffer[i]) {
+                buffer[unique++] = buffer[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * @return the number of target keys whose value in the state differs from the
+     *         target
+     */
+    public int mismatchedKeys(long state) {
+        int mismatched = 0;
+        for (int key : goalKeys) {
+            if (((state ^ goalBits) & encoder.fieldMask(key)) != 0) {
+                mismatched++;
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * @return the largest number of keys a single operator writes
+     */
+    public int maxWrittenKeys() {
+        return maxWrittenKeys;
+    }
+
+    public long goalMask() {
+        return goalMask;
+    }
+
+    public long goalBits() {
+        return goalBits;
+    }
+
+    public long writeMask(int op) {
+        return writeMasks[op];
+    }
+
+    public long writeBits(int op) {
+        return writeBits[op];
+    }
+
+    /**
+     * @return the keys the operator requires, aligned with
+     *         {@link #preconditionCodes(int)}
+     */
+    public int[] preconditionKeys(int op) {
+        return ontology.preconditionKeys(operatorFunctions[op]);
+    }
+
+    /**
+     * @return one bitset of accepted codes per required key
+     */
+    public long[][] preconditionCodes(int op) {
+        return ontology.preconditionCodes(operatorFunctions[op]);
+    }
+}
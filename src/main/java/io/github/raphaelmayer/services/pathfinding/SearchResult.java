@@ -0,0 +1,134 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+/**
+ * The outcome of a search: the service path (empty, if none was found) and the
+ * counters collected on the way.
+ *
+ * A result is optimal if it is provably the best possible outcome: a shortest
+ * (or, for weighted strategies, cheapest) path, or, if no path was found, the
+ * proof that none exists. Memory-bounded
+ * strategies may return results that are not optimal, e.g. when they ran out of
+ * their node budget.
+ *
+ * Multi-objective strategies return the fastest path of their Pareto front as
+ * the path and the rest of the front as alternatives.
+ */
+public class SearchResult {
+
+    private final List<ServiceFunction> path;
+    private final boolean found;
+    private final boolean optimal;
+    private final boolean budgetExhausted;
+    private final SearchStats stats;
+    private final List<List<ServiceFunction>> alternatives;
+
+    private SearchResult(List<ServiceFunction> path, boolean found, boolean optimal, boolean budgetExhausted,
+            SearchStats stats) {
+        this(path, found, optimal, budgetExhausted, stats, new ArrayList<>());
+    }
+
+    private SearchResult(List<ServiceFunction> path, boolean found, boolean optimal, boolean budgetExhausted,
+            SearchStats stats, List<List<ServiceFunction>> alternatives) {
+        this.path = path;
+        this.found = found;
+        this.optimal = optimal;
+        this.budgetExhausted = budgetExhausted;
+        this.stats = stats;
+        this.alternatives = alternatives;
+    }
+
+    public static SearchResult found(List<ServiceFunction> path, SearchStats stats) {
+        return found(path, stats, true);
+    }
+
+    public static SearchResult found(List<ServiceFunction> path, SearchStats stats, boolean optimal) {
+        stats.setPathLength(path.size());
+        return new SearchResult(path, true, optimal, false, stats);
+    }
+
+    /**
+     * @param front   the non-empty Pareto front, the first path becomes the path
+     *                of the result
+     * @param optimal whether the front is known to be complete
+     */
+    public static SearchResult paretoFront(List<List<ServiceFunction>> front, SearchStats stats, boolean optimal) {
+        stats.setPathLength(front.get(0).size());
+        return new SearchResult(front.get(0), true, optimal, false, stats,
+                new ArrayList<>(front.subList(1, front.size())));
+    }
+
+    /**
+     * @return a result proving that no path exists
+     */
+    public static SearchResult notFound(SearchStats stats) {
+        return notFound(stats, true);
+    }
+
+    public static SearchResult notFound(SearchStats stats, boolean optimal) {
+        return new SearchResult(new ArrayList<>(), false, optimal, false, stats);
+    }
+
+    /**
+     * @return a result of a search that stopped at its node budget without a path
+     */
+    public static SearchResult budgetExhausted(SearchStats stats) {
+        return budgetExhausted(new ArrayList<>(), stats);
+    }
+
+    /**
+     * @param path the best path found within the budget, empty if there is none
+     * @return a result of a search that stopped at its node budget, which is
+     *         not optimal
+     */
+    public static SearchResult budgetExhausted(List<ServiceFunction> path, SearchStats stats) {
+        if (!path.isEmpty()) {
+            stats.setPathLength(path.size());
+        }
+        return new SearchResult(path, !path.isEmpty(), false, true, stats);
+    }
+
+    public List<ServiceFunction> getPath() {
+        return path;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the other paths of the Pareto front, empty for single-objective
+     *         strategies
+     */
+    public List<List<ServiceFunction>> getAlternatives() {
+        return alternatives;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{" +
+                "found=" + found +
+                ", optimal=" + optimal +
+                ", budgetExhausted=" + budgetExhausted +
+                ", path=" + path +
+                ", alternatives=" + alternatives +
+                ", stats=" + stats +
+                '}';
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.Locale;
+
+/**
+ * Counters collected during a single search. The getters follow the bean
+ * conventions, so the stats can be dumped as JSON as they are.
+ */
+public class SearchStats {
+
+    private int nodesExpanded;
+    private int nodesStored;
+    private int duplicatesSkipped;
+    private long successorsGenerated;
+    private int frontierSize;
+    private int peakFrontierSize;
+    private long canApplyNanos;
+    private long applyNanos;
+    private int pathLength = -1;
+
+    public void nodeExpanded() {
+        nodesExpanded++;
+    }
+
+    public void nodeStored() {
+        nodesStored++;
+    }
+
+    /**
+     * Records a generated state that was dropped, because it had been seen before.
+     */
+    public void duplicateSkipped() {
+        duplicatesSkipped++;
+    }
+
+    /**
+     * Records the number of applicable services of an expanded node.
+     */
+    public void successorsGenerated(int count) {
+        successorsGenerated += count;
+    }
+
+    /**
+     * Records the current frontier size and keeps track of its high-water mark.
+     */
+    public void frontierSize(int size) {
+        frontierSize = size;
+        if (size > peakFrontierSize) {
+            peakFrontierSize = size;
+        }
+    }
+
+    /**
+     * Adds the time spent on finding the applicable services of a node.
+     */
+    public void canApplyTime(long nanos) {
+        canApplyNanos += nanos;
+    }
+
+    /**
+     * Adds the time spent on applying the services to a node and checking the
+     * resulting states.
+     */
+    public void applyTime(long nanos) {
+        applyNanos += nanos;
+    }
+
+    /**
+     * Adds the expansion counters and timings of a partial search, such as one
+     * chunk of a parallel level. Frontier sizes and path length are left as they are.
+     */
+    public void add(SearchStats other) {
+        nodesExpanded += other.nodesExpanded;
+        nodesStored += other.nodesStored;
+        duplicatesSkipped += other.duplicatesSkipped;
+        successorsGenerated += other.successorsGenerated;
+        canApplyNanos += other.canApplyNanos;
+        applyNanos += other.applyNanos;
+    }
+
+    public void setPathLength(int pathLength) {
+        this.pathLength = pathLength;
+    }
+
+    public int getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    public int getNodesStored() {
+        return nodesStored;
+    }
+
+    public int getDuplicatesSkipped() {
+        return duplicatesSkipped;
+    }
+
+    public long getSuccessorsGenerated() {
+        return successorsGenerated;
+    }
+
+    public int getFrontierSize() {
+        return frontierSize;
+    }
+
+    public int getPeakFrontierSize() {
+        return peakFrontierSize;
+    }
+
+    /**
+     * @return the average number of applicable services per expanded node
+     */
+    public double getAverageBranchingFactor() {
+        return nodesExpanded == 0 ? 0 : (double) successorsGenerated / nodesExpanded;
+    }
+
+    public long getCanApplyNanos() {
+        return canApplyNanos;
+    }
+
+    public long getApplyNanos() {
+        return applyNanos;
+    }
+
+    /**
+     * @return the number of services on the found path, or -1 if none was found
+     */
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchStats{" +
+                "nodesExpanded=" + nodesExpanded +
+                ", nodesStored=" + nodesStored +
+                ", duplicatesSkipped=" + duplicatesSkipped +
+                ", peakFrontierSize=" + peakFrontierSize +
+                ", averageBranchingFactor=" + String.format(Locale.ROOT, "%.2f", getAverageBranchingFactor()) +
+                ", canApplyMillis=" + String.format(Locale.ROOT, "%.3f", canApplyNanos / 1e6) +
+                ", applyMillis=" + String.format(Locale.ROOT, "%.3f", applyNanos / 1e6) +
+                ", pathLength=" + pathLength +
+                '}';
+    }
+}
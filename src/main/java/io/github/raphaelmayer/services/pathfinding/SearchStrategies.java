@@ -0,0 +1,71 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.raphaelmayer.util.Constants;
+
+/**
+ * Resolves search strategies by the names used on the command line.
+ */
+public class SearchStrategies {
+
+    public static final List<String> NAMES = Arrays.asList(BreadthFirstSearch.NAME, AStarSearch.NAME,
+            BidirectionalSearch.NAME, BeamSearch.NAME, IterativeDeepeningAStarSearch.NAME,
+            ParallelBreadthFirstSearch.NAME, MinCostSearch.FASTEST, MinCostSearch.CHEAPEST, ParetoSearch.NAME,
+            MacroSearch.NAME);
+
+    private SearchStrategies() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Resolves the strategy with the default node budget and beam width, and
+     * one search thread per available processor.
+     *
+     * @see #fromName(String, int, int, int)
+     */
+    public static SearchStrategy fromName(String name) {
+        return fromName(name, Constants.DEFAULT_NODE_BUDGET, Constants.DEFAULT_BEAM_WIDTH,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param name        the strategy name, or null for the default (BFS)
+     * @param nodeBudget  the node budget of the memory-bounded strategies and the
+     *                    Pareto search
+     * @param beamWidth   the width of the beam search
+     * @param parallelism the number of threads of the parallel BFS
+     * @throws IllegalArgumentException if no strategy has that name
+     */
+    public static SearchStrategy fromName(String name, int nodeBudget, int beamWidth, int parallelism) {
+        if (name == null) {
+            return new BreadthFirstSearch();
+        }
+        switch (name.toLowerCase()) {
+            case BreadthFirstSearch.NAME:
+                return new BreadthFirstSearch();
+            case AStarSearch.NAME:
+                return new AStarSearch();
+            case BidirectionalSearch.NAME:
+                return new BidirectionalSearch();
+            case BeamSearch.NAME:
+                return new BeamSearch(beamWidth, nodeBudget);
+            case IterativeDeepeningAStarSearch.NAME:
+                return new IterativeDeepeningAStarSearch(nodeBudget);
+            case ParallelBreadthFirstSearch.NAME:
+                return new ParallelBreadthFirstSearch(parallelism);
+            case MinCostSearch.FASTEST:
+                return new MinCostSearch(Objective.LATENCY);
+            case MinCostSearch.CHEAPEST:
+                return new MinCostSearch(Objective.PRICE);
+            case ParetoSearch.NAME:
+                return new ParetoSearch(nodeBudget);
+            case MacroSearch.NAME:
+                return new MacroSearch();
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown search strategy '" + name + "'. Available strategies: " + NAMES);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+/**
+ * A search algorithm that finds a service path for a compiled
+ * {@link SearchProblem}.
+ */
+public interface SearchStrategy {
+
+    /**
+     * @return the name used to select the strategy on the command line
+     */
+    String getName();
+
+    SearchResult search(SearchProblem problem);
+}
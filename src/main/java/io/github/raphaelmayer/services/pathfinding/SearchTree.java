@@ -0,0 +1,99 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+/**
+ * Stores search nodes as parallel primitive arrays. A node is only its state,
+ * the index of its parent and the operator that produced it, so memory grows
+ * linearly with the number of nodes instead of with their path lengths. The
+ * path of a node is rebuilt by following the parent pointers.
+ */
+public class SearchTree {
+
+    public static final int ROOT = -1;
+
+    private long[] states;
+    private int[] parents;
+    private int[] operators;
+    private int size;
+
+    public SearchTree() {
+        this(1024);
+    }
+
+    public SearchTree(int initialCapacity) {
+        states = new long[initialCapacity];
+        parents = new int[initialCapacity];
+        operators = new int[initialCapacity];
+    }
+
+    /**
+     * Adds a node to the tree.
+     *
+     * @return the index of the new node
+     */
+    public int add(long state, int parent, int operator) {
+        if (size == states.length) {
+            int capacity = states.length << 1;
+            states = Arrays.copyOf(states, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            operators = Arrays.copyOf(operators, capacity);
+        }
+        states[size] = state;
+        parents[size] = parent;
+        operators[size] = operator;
+        return size++;
+    }
+
+    public long state(int node) {
+        return states[node];
+    }
+
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    public int operator(int node) {
+        return operators[node];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int depth(int node) {
+        int depth = 0;
+        for (int n = node; parents[n] != ROOT; n = parents[n]) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * @return the operator indices leading from the root to the node
+     */
+    public List<Integer> operatorPath(int node) {
+        List<Integer> path = new ArrayList<>();
+        for (int n = node; parents[n] != ROOT; n = parents[n]) {
+            path.add(operators[n]);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * @return the functions leading from the root to the node
+     */
+    public List<ServiceFunction> path(int node, SearchProblem problem) {
+        List<ServiceFunction> path = new ArrayList<>();
+        for (int op : operatorPath(node)) {
+            path.add(problem.function(op));
+        }
+        return path;
+    }
+}
@@ -0,0 +1,436 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.github.raphaelmayer.models.OntologyChange;
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.util.Utils;
+
+/**
+ * Caches service paths by a canonical key of the transformation, so repeated
+ * requests skip the search. Only planning-relevant fields are part of the key:
+ * the attributes the ontology functions read or write (e.g. type and language)
+ * and the functions the {@link PlanningConstraints} rule out. Otherwise, where
+ * the data lives (region, bucket, fileNames) does not change the path.
+ *
+ * There are two tiers: an in-memory LRU map and a directory of JSON files that
+ * survives restarts. Disk entries are stored below a directory named after the
+ * content hash of the ontology loaded on startup, so editing the ontology file
+ * invalidates them
+ * automatically; directories of older ontologies are removed on startup.
+ * Changes applied to a running planner (see {@link #update(CompiledOntology,
+ * OntologyChange)}) only drop the paths they may affect. Entries on disk are
+ * checked against these changes when they are read, so a change does not
+ * touch the directory beyond the dropped entries of the memory tier.
+ *
+ * The cache is thread-safe.
+ */
+public class ServicePathCache {
+
+    // Part of every key, bump it whenever the planner may return different paths
+    // for the same ontology
+    private static final int PLANNER_VERSION = 4;
+    // Disk entries written before the changes that are no longer kept are planned again
+    private static final int HISTORY_LENGTH = 16;
+
+    private volatile CompiledOntology ontology;
+    private final Path baseDirectory;
+    private final Path directory;
+    private final Map<String, CacheEntry> memory;
+    // the changes applied since the cache was created, oldest first
+    private final Deque<AppliedChange> history = new ArrayDeque<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private int hits;
+    private int misses;
+
+    /**
+     * A cached path as stored on disk. The transformation and strategy are kept
+     * to check and plan the path again when the ontology changes.
+     */
+    public static class CacheEntry {
+        // the ontology the path was last known to be valid for
+        public String ontologyHash;
+        public String strategy;
+        public Map<String, Object> input;
+        public Map<String, Object> output;
+        public List<String> path;
+
+        public Transformation transformation() {
+            Transformation transformation = new Transformation();
+            transformation.input = input;
+            transformation.output = output;
+            return transformation;
+        }
+    }
+
+    /**
+     * A change of the ontology, with the compiled ontologies before and after.
+     */
+    private static final class AppliedChange {
+        private final CompiledOntology previous;
+        private final CompiledOntology updated;
+        private final OntologyChange change;
+
+        private AppliedChange(CompiledOntology previous, CompiledOntology updated, OntologyChange change) {
+            this.previous = previous;
+            this.updated = updated;
+            this.change = change;
+        }
+    }
+
+    /**
+     * @param ontology      the ontology the cached paths belong to
+     * @param baseDirectory the on-disk tier, or null for an in-memory cache only
+     * @param capacity      the number of paths kept in memory
+     */
+    public ServicePathCache(CompiledOntology ontology, String baseDirectory, final int capacity) {
+        this.ontology = ontology;
+        this.memory = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        if (baseDirectory == null) {
+            this.baseDirectory = null;
+            this.directory = null;
+            return;
+        }
+        this.baseDirectory = Paths.get(baseDirectory);
+        // changes applied at runtime keep the directory, its entries are checked when read
+        this.directory = this.baseDirectory.resolve(ontology.getContentHash());
+        removeStaleDirectories();
+    }
+
+    /**
+     * Builds the canonical cache key of a transformation.
+     *
+     * @param strategy the name of the search strategy, as strategies may pick
+     *                 different paths of equal length
+     */
+    public String key(Transformation transformation, String strategy) {
+        return canonicalKey(ontology, transformation, strategy);
+    }
+
+    /**
+     * Builds the canonical key of a transformation for an ontology, without
+     * requiring a cache instance.
+     */
+    public static String canonicalKey(CompiledOntology ontology, Transformation transformation, String strategy) {
+        StateEncoder encoder = ontology.getEncoder();
+        Map<String, Object> input = new TreeMap<>();
+        Map<String, Object> output = new TreeMap<>();
+        // target keys no function touches only matter in whether they already hold
+        boolean unchangedTargetsMatch = true;
+        for (Map.Entry<String, Object> entry : transformation.input.entrySet()) {
+            if (encoder.keyIndex(entry.getKey()) >= 0) {
+                input.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Object> entry : transformation.output.entrySet()) {
+            if (encoder.keyIndex(entry.getKey()) >= 0) {
+                output.put(entry.getKey(), entry.getValue());
+            } else {
+                unchangedTargetsMatch &= Objects.equals(transformation.input.get(entry.getKey()),
+                        entry.getValue());
+            }
+        }
+        // requests with the same excluded functions plan over the same operators. The
+        // ontology itself is not part of the key, the cache keeps to a single one
+        List<String> excluded = new ArrayList<>();
+        boolean[] excludedFunctions = PlanningConstraints.fromInput(ontology, transformation.input)
+                .excludedFunctions(ontology);
+        for (int function = 0; excludedFunctions != null && function < excludedFunctions.length; function++) {
+            if (excludedFunctions[function]) {
+                excluded.add(ontology.function(function).name);
+            }
+        }
+        String canonical = PLANNER_VERSION + "|" + strategy + "|" + input + "|" + output + "|"
+                + unchangedTargetsMatch + "|" + excluded;
+        return Utils.sha256Hex(canonical);
+    }
+
+    /**
+     * @return the cached path or null, if the key is unknown or the cached
+     *         functions no longer exist
+     */
+    public List<ServiceFunction> get(String key) {
+        CacheEntry entry;
+        synchronized (this) {
+            entry = memory.get(key);
+        }
+        if (entry == null) {
+            // disk reads happen outside the lock, so concurrent planners do not queue up
+            entry = readEntry(key);
+            if (entry != null) {
+                boolean valid;
+                synchronized (this) {
+                    valid = validate(entry);
+                    if (valid) {
+                        memory.putIfAbsent(key, entry);
+                    }
+                }
+                if (!valid) {
+                    deleteEntry(key);
+                    entry = null;
+                }
+            }
+        }
+        List<ServiceFunction> path = entry == null ? null : resolve(entry.path);
+        synchronized (this) {
+            if (path == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Checks an entry read from disk against the changes applied since it was
+     * written, and moves it to the current ontology if none of them affects it.
+     * Must be called with the lock held.
+     */
+    private boolean validate(CacheEntry entry) {
+        if (entry.strategy == null) {
+            return false;
+        }
+        if (ontology.getContentHash().equals(entry.ontologyHash)) {
+            return true;
+        }
+        boolean since = false;
+        for (AppliedChange applied : history) {
+            since |= applied.previous.getContentHash().equals(entry.ontologyHash);
+            if (since && affects(applied.previous, applied.updated, applied.change, entry)) {
+                return false;
+            }
+        }
+        if (!since) {
+            return false; // another ontology, or a change that is no longer kept
+        }
+        entry.ontologyHash = ontology.getContentHash();
+        return true;
+    }
+
+    /**
+     * Caches the path of a transformation.
+     *
+     * @param plannedWith the ontology the path was planned with, the path is
+     *                    dropped if the cache has been updated since
+     */
+    public void put(String key, String strategy, Transformation transformation, List<ServiceFunction> path,
+            CompiledOntology plannedWith) {
+        CacheEntry entry = new CacheEntry();
+        entry.ontologyHash = plannedWith.getContentHash();
+        entry.strategy = strategy;
+        entry.input = transformation.input;
+        entry.output = transformation.output;
+        entry.path = new ArrayList<>();
+        for (ServiceFunction function : path) {
+            entry.path.add(function.name);
+        }
+        synchronized (this) {
+            if (plannedWith != ontology) {
+                return;
+            }
+            memory.put(key, entry);
+        }
+        // a path written after a change carries the ontology it was planned with, so it is
+        // checked against the change when it is read
+        writeEntry(key, entry);
+    }
+
+    /**
+     * Moves the cache to the ontology after a change. A cached path is dropped
+     * if the change may affect it:
+     * <ul>
+     * <li>the removed or modified function is on the path</li>
+     * <li>the added function, or the new version of the modified one, may take
+     * part in a path for the transformation (see
+     * {@link CompiledOntology#mayTakePart(int, Map, Map)})</li>
+     * <li>the change touches the analyse function, or a split or merge function
+     * for the data types of the transformation</li>
+     * </ul>
+     * Every other path is still valid, and no path with fewer services (or a
+     * lower cost) exists after the change; among equally short paths the planner
+     * may prefer another one now.
+     *
+     * Only the memory tier is checked right away. Its other paths are kept
+     * under their key for the changed ontology (e.g. the planning constraints
+     * may rule out the added function). The files of the dropped paths are
+     * deleted, those of paths whose key changed are moved to the new key; every
+     * other file is checked against the changes when it is read (see
+     * {@link #HISTORY_LENGTH}).
+     *
+     * @return the dropped entries of the memory tier, e.g. to plan them again
+     */
+    public List<CacheEntry> update(CompiledOntology updated, OntologyChange change) {
+        List<CacheEntry> dropped = new ArrayList<>();
+        List<String> deletedKeys;
+        Map<String, CacheEntry> moved = new LinkedHashMap<>();
+        synchronized (this) {
+            CompiledOntology previous = ontology;
+            // keeps the access order of the memory tier
+            Map<String, CacheEntry> retained = new LinkedHashMap<>();
+            for (Map.Entry<String, CacheEntry> entry : memory.entrySet()) {
+                CacheEntry cached = entry.getValue();
+                if (cached.strategy == null || affects(previous, updated, change, cached)) {
+                    dropped.add(cached);
+                    continue;
+                }
+                cached.ontologyHash = updated.getContentHash();
+                // the key changes with the attributes and values the functions use
+                String key = canonicalKey(updated, cached.transformation(), cached.strategy);
+                if (retained.putIfAbsent(key, cached) == null && !key.equals(entry.getKey())) {
+                    moved.put(key, cached);
+                }
+            }
+            deletedKeys = new ArrayList<>(memory.keySet());
+            deletedKeys.removeAll(retained.keySet());
+            memory.clear();
+            memory.putAll(retained);
+
+            history.addLast(new AppliedChange(previous, updated, change));
+            if (history.size() > HISTORY_LENGTH) {
+                history.removeFirst();
+            }
+            ontology = updated;
+        }
+        for (String key : deletedKeys) {
+            deleteEntry(key);
+        }
+        for (Map.Entry<String, CacheEntry> entry : moved.entrySet()) {
+            writeEntry(entry.getKey(), entry.getValue());
+        }
+        return dropped;
+    }
+
+    private static boolean affects(CompiledOntology previous, CompiledOntology updated, OntologyChange change,
+            CacheEntry entry) {
+        ServiceFunction before = change.kind == OntologyChange.Kind.ADDED ? null
+                : previous.getFunction(change.functionName());
+        ServiceFunction after = change.kind == OntologyChange.Kind.REMOVED ? null : change.function;
+        if (before != null && (entry.path.contains(before.name) || completes(before, entry))) {
+            return true;
+        }
+        return after != null && (completes(after, entry)
+                || updated.mayTakePart(updated.indexOf(after.name), entry.input, entry.output));
+    }
+
+    /**
+     * Determines if the planner may add the function around the searched
+     * services of the entry.
+     */
+    private static boolean completes(ServiceFunction function, CacheEntry entry) {
+        if ("analyse".equals(function.name)) {
+            return true;
+        }
+        List<Object> types = StateEncoder.asList(function.input.get("type"));
+        return "split".equalsIgnoreCase(function.type) && types.contains(entry.input.get("type"))
+                || "merge".equalsIgnoreCase(function.type) && types.contains(entry.output.get("type"));
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private List<ServiceFunction> resolve(List<String> names) {
+        List<ServiceFunction> path = new ArrayList<>();
+        for (String name : names) {
+            ServiceFunction function = ontology.getFunction(name);
+            if (function == null) {
+                return null;
+            }
+            path.add(function);
+        }
+        return path;
+    }
+
+    private CacheEntry readEntry(String key) {
+        if (directory == null) {
+            return null;
+        }
+        File file = directory.resolve(key + ".json").toFile();
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            CacheEntry entry = mapper.readValue(file, CacheEntry.class);
+            return entry.path != null ? entry : null;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable path cache entry " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeEntry(String key, CacheEntry entry) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            // write to a temporary file first, so readers never see a partial entry
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            mapper.writeValue(temp.toFile(), entry);
+            Files.move(temp, directory.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the cache is an optimization, a failed write must not fail the run
+            System.err.println("Could not write path cache entry: " + e.getMessage());
+        }
+    }
+
+    private void deleteEntry(String key) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(key + ".json"));
+        } catch (IOException e) {
+            System.err.println("Could not delete path cache entry: " + e.getMessage());
+        }
+    }
+
+    private void removeStaleDirectories() {
+        if (!Files.isDirectory(baseDirectory)) {
+            return;
+        }
+        try (Stream<Path> children = Files.list(baseDirectory)) {
+            children.filter(child -> !child.equals(directory)).forEach(ServicePathCache::deleteRecursively);
+        } catch (IOException e) {
+            System.err.println("Could not clean up path cache: " + e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Could not delete " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+/**
+ * Interns every attribute key and value used by the ontology functions into
+ * small integer codes and packs a search state into a single long. Each key
+ * owns a fixed bit field wide enough for all of its codes, so comparing or
+ * hashing a state is a primitive operation instead of a HashMap traversal.
+ *
+ * Code 0 marks an absent key and code 1 a value that no function knows about
+ * (e.g. an exotic input language). Both can never satisfy a function's input
+ * requirements, which mirrors the behaviour of the map based search.
+ *
+ * A state holds at most {@link #MAX_BITS} bits. An ontology whose attributes
+ * need more is rejected when it is compiled or changed, so the planner keeps
+ * working on the ontology it had.
+ */
+public class StateEncoder {
+
+    public static final int ABSENT = 0;
+    public static final int UNKNOWN = 1;
+    private static final int FIRST_VALUE_CODE = 2;
+    public static final int MAX_BITS = Long.SIZE;
+
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> keyIndex = new HashMap<>();
+    private final List<List<Object>> values = new ArrayList<>();
+    private final List<Map<Object, Integer>> valueCodes = new ArrayList<>();
+    private final int[] shifts;
+    private final long[] masks;
+
+    /**
+     * @throws IllegalArgumentException if the attributes of the functions need
+     *                                  more than {@link #MAX_BITS} bits
+     */
+    public StateEncoder(List<ServiceFunction> functions) {
+        // Collect keys and values in ontology order, so codes are stable between runs
+        Map<String, List<Object>> domain = new LinkedHashMap<>();
+        for (ServiceFunction function : functions) {
+            collectValues(domain, function.input);
+            collectValues(domain, function.output);
+        }
+
+        for (Map.Entry<String, List<Object>> entry : domain.entrySet()) {
+            keyIndex.put(entry.getKey(), keys.size());
+            keys.add(entry.getKey());
+
+            List<Object> keyValues = new ArrayList<>();
+            Map<Object, Integer> codes = new HashMap<>();
+            keyValues.add(null); // ABSENT
+            keyValues.add(null); // UNKNOWN
+            for (Object value : entry.getValue()) {
+                codes.put(value, keyValues.size());
+                keyValues.add(value);
+            }
+            values.add(keyValues);
+            valueCodes.add(codes);
+        }
+
+        shifts = new int[keys.size()];
+        masks = new long[keys.size()];
+        int offset = 0;
+        for (int k = 0; k < keys.size(); k++) {
+            int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(values.get(k).size() - 1));
+            shifts[k] = offset;
+            masks[k] = (1L << bits) - 1;
+            offset += bits;
+        }
+        if (offset > MAX_BITS) {
+            throw new IllegalArgumentException("Ontology attributes need " + offset + " bits, but a search state holds "
+                    + MAX_BITS + ". Widest attributes: " + widestKeys(3)
+                    + ". Remove unused attribute values or merge rarely used ones.");
+        }
+    }
+
+    /**
+     * @return the keys with the most bits, to tell which values to drop when the
+     *         encoding overflows
+     */
+    private String widestKeys(int limit) {
+        List<Integer> byWidth = new ArrayList<>();
+        for (int k = 0; k < keys.size(); k++) {
+            byWidth.add(k);
+        }
+        byWidth.sort((a, b) -> Long.compare(masks[b], masks[a]));
+        List<String> widest = new ArrayList<>();
+        for (int k : byWidth.subList(0, Math.min(limit, byWidth.size()))) {
+            int valueCount = values.get(k).size() - FIRST_VALUE_CODE;
+            widest.add(keys.get(k) + " (" + Long.bitCount(masks[k]) + " bits, " + valueCount + " values)");
+        }
+        return String.join(", ", widest);
+    }
+
+    private static void collectValues(Map<String, List<Object>> domain, Map<String, Object> attributes) {
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            List<Object> known = domain.computeIfAbsent(entry.getKey(), k -> new ArrayList<>());
+            for (Object value : asList(entry.getValue())) {
+                if (value != null && !known.contains(value)) {
+                    known.add(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ontology attributes hold a list of allowed values, but tolerate a single
+     * scalar as well.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> asList(Object attribute) {
+        if (attribute instanceof List) {
+            return (List<Object>) attribute;
+        }
+        return attribute == null ? Collections.emptyList() : Collections.singletonList(attribute);
+    }
+
+    public int keyCount() {
+        return keys.size();
+    }
+
+    /**
+     * Determines if both encoders assign the same codes to the same keys and
+     * values, so states and code sets of one are valid in the other.
+     */
+    public boolean hasSameCodes(StateEncoder other) {
+        return keys.equals(other.keys) && values.equals(other.values);
+    }
+
+    public String key(int key) {
+        return keys.get(key);
+    }
+
+    /**
+     * @return the index of the key or -1, if no ontology function uses it
+     */
+    public int keyIndex(String key) {
+        Integer index = keyIndex.get(key);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the number of codes of a key, including the reserved ones
+     */
+    public int cardinality(int key) {
+        return values.get(key).size();
+    }
+
+    public int code(int key, Object value) {
+        if (value == null) {
+            return ABSENT;
+        }
+        Integer code = valueCodes.get(key).get(value);
+        return code == null ? UNKNOWN : code;
+    }
+
+    public Object value(int key, int code) {
+        return values.get(key).get(code);
+    }
+
+    public int get(long state, int key) {
+        return (int) ((state >>> shifts[key]) & masks[key]);
+    }
+
+    public long set(long state, int key, int code) {
+        return (state & ~fieldMask(key)) | ((long) code << shifts[key]);
+    }
+
+    public long fieldMask(int key) {
+        return masks[key] << shifts[key];
+    }
+
+    public long encode(Map<String, Object> state) {
+        long encoded = 0L;
+        for (int k = 0; k < keys.size(); k++) {
+            encoded = set(encoded, k, code(k, state.get(keys.get(k))));
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes a state for printing. Unknown values are shown by their
+     * placeholder, since the encoding does not retain them.
+     */
+    public Map<String, Object> decode(long state) {
+        Map<String, Object> decoded = new LinkedHashMap<>();
+        for (int k = 0; k < keys.size(); k++) {
+            int code = get(state, k);
+            if (code == UNKNOWN) {
+                decoded.put(keys.get(k), "?");
+            } else if (code != ABSENT) {
+                decoded.put(keys.get(k), values.get(k).get(code));
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Creates a bitset over the codes of a key that contains every given value.
+     */
+    public long[] codeSet(int key, List<Object> allowedValues) {
+        long[] bits = new long[(cardinality(key) + 63) >>> 6];
+        for (Object value : allowedValues) {
+            int code = code(key, value);
+            if (code >= FIRST_VALUE_CODE) {
+                bits[code >>> 6] |= 1L << code;
+            }
+        }
+        return bits;
+    }
+
+    public static boolean contains(long[] codeSet, int code) {
+        return (codeSet[code >>> 6] & (1L << code)) != 0;
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.raphaelmayer.util;
+
+import java.util.Arrays;
+
+/**
+ * A thread-safe map from primitive longs to the smallest long value offered for
+ * them. Keys are spread over lock-striped open-addressing tables, so threads
+ * claiming different keys rarely contend.
+ *
+ * Parallel searches use it to decide which of several concurrent generators of
+ * the same state wins: the one with the smallest rank, independent of thread
+ * timing.
+ */
+public class ConcurrentLongMinMap {
+
+    public static final long MISSING = Long.MAX_VALUE;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * @param concurrency the expected number of concurrently writing threads
+     */
+    public ConcurrentLongMinMap(int concurrency) {
+        int count = Integer.highestOneBit(Math.max(1, concurrency * 4) - 1) << 1;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        stripeMask = count - 1;
+    }
+
+    /**
+     * Offers a value for the key and keeps the smaller of it and the current value.
+     *
+     * @return true if the value is now the smallest one offered for the key
+     */
+    public boolean claim(long key, long value) {
+        int hash = LongHashSet.mix(key);
+        Stripe stripe = stripes[(hash >>> 24) & stripeMask];
+        synchronized (stripe) {
+            return stripe.claim(key, value, hash);
+        }
+    }
+
+    /**
+     * @return the smallest value offered for the key or {@link #MISSING}
+     */
+    public long get(long key) {
+        int hash = LongHashSet.mix(key);
+        Stripe stripe = stripes[(hash >>> 24) & stripeMask];
+        synchronized (stripe) {
+            return stripe.get(key, hash);
+        }
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    private static class Stripe {
+
+        private long[] keys;
+        private long[] values;
+        private boolean[] used;
+        private int size;
+        private int threshold;
+
+        Stripe() {
+            allocate(16);
+        }
+
+        boolean claim(long key, long value, int hash) {
+            int slot = findSlot(keys, used, key, hash);
+            if (used[slot]) {
+                if (value < values[slot]) {
+                    values[slot] = value;
+                    return true;
+                }
+                return value == values[slot];
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            used[slot] = true;
+            if (++size > threshold) {
+                rehash(keys.length << 1);
+            }
+            return true;
+        }
+
+        long get(long key, int hash) {
+            int slot = findSlot(keys, used, key, hash);
+            return used[slot] ? values[slot] : MISSING;
+        }
+
+        void clear() {
+            Arrays.fill(used, false);
+            size = 0;
+        }
+
+        private static int findSlot(long[] keys, boolean[] used, long key, int hash) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+            used = new boolean[capacity];
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            boolean[] oldUsed = used;
+            allocate(capacity);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    int slot = findSlot(keys, used, oldKeys[i], LongHashSet.mix(oldKeys[i]));
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    used[slot] = true;
+                }
+            }
+        }
+    }
+}
@@ -18,6 +18,35 @@ public class Constants {
     public static final String LAYER_DIRECTORY = RESOURCE_DIRECTORY + "layers" + File.separator;
     // The relative path of the ontology file.
     public static final String ONTOLOGY_PATH = RESOURCE_DIRECTORY + "function_ontology.json";
+    // The directory where local state (e.g. cached service paths) is kept between runs.
+    public static final String STATE_DIRECTORY = ".compositebaas" + File.separator;
+    // The directory of the on-disk service path cache.
+    public static final String PATH_CACHE_DIRECTORY = STATE_DIRECTORY + "path-cache" + File.separator;
+    // The file the learned macro-operators are stored in.
+    public static final String MACRO_PATH = STATE_DIRECTORY + "macros.json";
+    // The directory of the deployment manifests, one per region.
+    public static final String DEPLOYMENT_DIRECTORY = STATE_DIRECTORY + "deployments" + File.separator;
+
+    // Path Finding Settings
+    // Number of service paths kept in memory by the path cache.
+    public static final int PATH_CACHE_CAPACITY = 1024;
+    // Number of nodes the memory-bounded search strategies (beam, idastar) may visit.
+    public static final int DEFAULT_NODE_BUDGET = 100_000;
+    // Number of states per level kept by the beam search.
+    public static final int DEFAULT_BEAM_WIDTH = 64;
+    // Number of found service paths a sub-path must occur in to become a macro-operator.
+    public static final int MACRO_MIN_FREQUENCY = 3;
+    // Number of services of the longest macro-operator.
+    public static final int MACRO_MAX_LENGTH = 4;
+    // Number of macro-operators offered to a search.
+    public static final int MACRO_LIMIT = 64;
+    // Price of one GB-second of Lambda compute time in USD, used to estimate service prices.
+    public static final double LAMBDA_PRICE_PER_GB_SECOND = 0.0000166667;
+    // Price of one Lambda request in USD, used to estimate service prices.
+    public static final double LAMBDA_PRICE_PER_REQUEST = 0.0000002;
+    // Lambda defaults for functions without memory (MB) or timeout (seconds) in their config.
+    public static final int LAMBDA_DEFAULT_MEMORY = 128;
+    public static final int LAMBDA_DEFAULT_TIMEOUT = 3;
 
     // AWS Lambda Function Settings
     // Prefix for Lambda function names.
@@ -26,6 +55,10 @@ public class Constants {
     public static final String LAMBDA_SERVICE_ROLE_NAME = "Lambda-Service-Role";
     // The runtime environment used by Lambda functions.
     public static final String LAMBDA_RUNTIME = "nodejs20.x";
+    // Number of deployment steps (uploads, API changes, ...) running at once.
+    public static final int DEPLOYMENT_PARALLELISM = 8;
+    // Number of deletions running at once when the environment is reset.
+    public static final int TEARDOWN_PARALLELISM = 16;
 
     // AWS API Gateway Settings
     // Name of the API Gateway to expose Lambda functions.
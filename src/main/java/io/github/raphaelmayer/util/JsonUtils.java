@@ -5,9 +5,15 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class JsonUtils {
@@ -29,6 +35,39 @@ public class JsonUtils {
         }
     }
 
+    /**
+     * Parses a JSON Lines file, i.e. one JSON document per line. Blank lines are
+     * skipped.
+     */
+    public static <T> List<T> parseJsonLines(String filePath, Class<T> clazz) {
+        return parseJsonLines(filePath, clazz, new ArrayList<>());
+    }
+
+    /**
+     * Like {@link #parseJsonLines(String, Class)}, and adds the line number
+     * (starting at 1) of every parsed document to {@code lineNumbers}.
+     */
+    public static <T> List<T> parseJsonLines(String filePath, Class<T> clazz, List<Integer> lineNumbers) {
+        System.out.println("Processing file: " + filePath);
+        ObjectMapper mapper = new ObjectMapper();
+        List<T> documents = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.trim().isEmpty()) {
+                    documents.add(mapper.readValue(line, clazz));
+                    lineNumbers.add(lineNumber);
+                }
+            }
+            return documents;
+        } catch (IOException e) {
+            throw new JsonParsingException("Error reading JSON Lines file: " + filePath, e);
+        }
+    }
+
     public static <T> void writeFile(JsonNode data, String filePath) {
         ObjectMapper mapper = new ObjectMapper();
         mapper.enable(SerializationFeature.INDENT_OUTPUT);
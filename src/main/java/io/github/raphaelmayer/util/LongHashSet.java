@@ -0,0 +1,102 @@
+package io.github.raphaelmayer.util;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open-addressing hash set for primitive longs. It avoids the boxing
+ * and per-entry allocation of a HashSet&lt;Long&gt;, which matters when the set
+ * holds millions of encoded search states.
+ */
+public class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] table;
+    private boolean[] used;
+    private int size;
+    private int threshold;
+
+    public LongHashSet() {
+        this(64);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @return true if the value was not yet contained in the set
+     */
+    public boolean add(long value) {
+        int slot = findSlot(table, used, value);
+        if (used[slot]) {
+            return false;
+        }
+        table[slot] = value;
+        used[slot] = true;
+        if (++size > threshold) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        return used[findSlot(table, used, value)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Spreads the bits of a value so that densely packed states do not cluster.
+     */
+    public static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+
+    private static int findSlot(long[] table, boolean[] used, long value) {
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (used[slot] && table[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        used = new boolean[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldTable = table;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldUsed[i]) {
+                int slot = findSlot(table, used, oldTable[i]);
+                table[slot] = oldTable[i];
+                used[slot] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.raphaelmayer.util;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open-addressing hash map from primitive longs to ints, the
+ * counterpart of {@link LongHashSet} for search states that carry a value such
+ * as a node index or a path cost.
+ */
+public class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int threshold;
+
+    /**
+     * @param missingValue the value returned by {@link #get(long)} for absent keys
+     */
+    public LongIntHashMap(int missingValue) {
+        this.missingValue = missingValue;
+        allocate(64);
+    }
+
+    public int get(long key) {
+        int slot = findSlot(keys, used, key);
+        return used[slot] ? values[slot] : missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        return used[findSlot(keys, used, key)];
+    }
+
+    /**
+     * Associates the value with the key.
+     *
+     * @return the previous value or the missing value
+     */
+    public int put(long key, int value) {
+        int slot = findSlot(keys, used, key);
+        if (used[slot]) {
+            int previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private static int findSlot(long[] keys, boolean[] used, long key) {
+        int mask = keys.length - 1;
+        int slot = LongHashSet.mix(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = findSlot(keys, used, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                used[slot] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.raphaelmayer.util;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of primitive longs. Search strategies pack a priority into
+ * the upper and a node index into the lower bits, so ties are broken by
+ * insertion order without boxing.
+ */
+public class LongMinHeap {
+
+    private long[] heap = new long[64];
+    private int size;
+
+    public void add(long value) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size << 1);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = value;
+    }
+
+    public long peek() {
+        return heap[0];
+    }
+
+    public long poll() {
+        long top = heap[0];
+        long last = heap[--size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+        return top;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Packs a non-negative priority and a node index into one heap entry.
+     */
+    public static long entry(int priority, int node) {
+        return ((long) priority << 32) | (node & 0xffffffffL);
+    }
+
+    public static int priority(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    public static int node(long entry) {
+        return (int) entry;
+    }
+}
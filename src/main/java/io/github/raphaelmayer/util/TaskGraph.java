@@ -0,0 +1,262 @@
+package io.github.raphaelmayer.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs a graph of asynchronous tasks, e.g. the steps of a deployment. A task
+ * starts as soon as every task it depends on has completed, and at most
+ * {@code parallelism} tasks run at once. Tasks are added after the tasks they
+ * depend on, so the graph cannot contain cycles, and start right away once
+ * they may. A running task may add further tasks, e.g. one for each resource
+ * it listed, before it completes.
+ *
+ * A failed task fails every task that depends on it, independent tasks still
+ * run. Blocking work (e.g. a synchronous SDK call) runs on threads of the graph,
+ * so it does not stall the threads that complete asynchronous calls.
+ */
+public class TaskGraph {
+
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final List<Task<?>> tasks = new ArrayList<>();
+    // tasks whose dependencies have completed, waiting for one of the running ones
+    private final Deque<Runnable> waiting = new ArrayDeque<>();
+    private final long started = System.nanoTime();
+    private int running;
+
+    /**
+     * A task of the graph and its result.
+     */
+    public static final class Task<T> {
+
+        private final String name;
+        private final List<Task<?>> dependencies;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile long startNanos;
+        private volatile long endNanos;
+        private volatile boolean skipped;
+
+        private Task(String name, List<Task<?>> dependencies) {
+            this.name = name;
+            this.dependencies = dependencies;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the result, waiting for it if necessary. Tasks read the results
+         *         of their dependencies with it.
+         * @throws CompletionException if the task failed
+         */
+        public T get() {
+            return result.join();
+        }
+
+        public CompletableFuture<T> result() {
+            return result;
+        }
+
+        public boolean isSucceeded() {
+            return result.isDone() && !result.isCompletedExceptionally();
+        }
+
+        /**
+         * @return true if the task did not run, because a dependency failed
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return the time the task ran, without waiting for its dependencies
+         */
+        public long getMillis() {
+            return endNanos == 0 ? 0 : (endNanos - startNanos) / 1_000_000;
+        }
+    }
+
+    public TaskGraph(int parallelism) {
+        this.parallelism = parallelism;
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "task-graph");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a task that starts an asynchronous call, e.g. of an async SDK client.
+     *
+     * @param action       starts the call, it may read the results of the
+     *                     dependencies
+     * @param dependencies the tasks that must complete first
+     */
+    public <T> Task<T> add(String name, Supplier<CompletableFuture<T>> action, Task<?>... dependencies) {
+        List<Task<?>> before = new ArrayList<>();
+        CompletableFuture<?>[] results = new CompletableFuture<?>[dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) {
+            before.add(dependencies[i]);
+            results[i] = dependencies[i].result;
+        }
+        Task<T> task = new Task<>(name, before);
+        synchronized (this) {
+            tasks.add(task);
+        }
+        CompletableFuture.allOf(results).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                task.skipped = true;
+                task.result.completeExceptionally(unwrap(failure));
+            } else {
+                schedule(() -> start(task, action));
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Adds a task that blocks while it runs, e.g. a synchronous SDK call or
+     * compressing a file.
+     */
+    public <T> Task<T> addBlocking(String name, Supplier<T> action, Task<?>... dependencies) {
+        return add(name, () -> CompletableFuture.supplyAsync(action, executor), dependencies);
+    }
+
+    /**
+     * Waits for every task and prints how long the graph took, compared to
+     * running the tasks one after another and to its critical path.
+     *
+     * @throws RuntimeException the failure of the first failed task, in the order
+     *                          the tasks were added
+     */
+    public void join() {
+        // tasks only add tasks before they complete, so waiting in order sees all of them
+        for (int i = 0;; i++) {
+            Task<?> task;
+            synchronized (this) {
+                if (i == tasks.size()) {
+                    break;
+                }
+                task = tasks.get(i);
+            }
+            task.result.handle((value, failure) -> null).join();
+        }
+        executor.shutdown();
+        List<Task<?>> all;
+        synchronized (this) {
+            all = new ArrayList<>(tasks);
+        }
+
+        long sequential = 0;
+        for (Task<?> task : all) {
+            sequential += task.getMillis();
+        }
+        System.out.println(String.format(Locale.ROOT,
+                "Ran %d tasks in %d ms (%d ms one after another, critical path %d ms).", all.size(),
+                (System.nanoTime() - started) / 1_000_000, sequential, criticalPathMillis(all)));
+
+        for (Task<?> task : all) {
+            if (task.result.isCompletedExceptionally() && !task.skipped) {
+                Throwable failure = failure(task);
+                System.err.println("Task " + task.name + " failed: " + failure.getMessage());
+                throw failure instanceof RuntimeException ? (RuntimeException) failure
+                        : new RuntimeException(failure);
+            }
+        }
+    }
+
+    private <T> void start(Task<T> task, Supplier<CompletableFuture<T>> action) {
+        task.startNanos = System.nanoTime();
+        CompletableFuture<T> call;
+        try {
+            call = action.get();
+        } catch (RuntimeException e) {
+            call = new CompletableFuture<>();
+            call.completeExceptionally(e);
+        }
+        call.whenComplete((value, failure) -> {
+            task.endNanos = System.nanoTime();
+            // start the next task before the dependents of this one queue up
+            finished();
+            if (failure != null) {
+                task.result.completeExceptionally(unwrap(failure));
+            } else {
+                task.result.complete(value);
+            }
+        });
+    }
+
+    private void schedule(Runnable start) {
+        synchronized (this) {
+            if (running >= parallelism) {
+                waiting.add(start);
+                return;
+            }
+            running++;
+        }
+        start.run();
+    }
+
+    private void finished() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * @return the longest chain of dependent tasks, by the time they ran
+     */
+    private static long criticalPathMillis(List<Task<?>> tasks) {
+        // tasks come after their dependencies, so one pass in order suffices
+        Map<Task<?>, Long> finish = new IdentityHashMap<>();
+        long longest = 0;
+        for (Task<?> task : tasks) {
+            long before = 0;
+            for (Task<?> dependency : task.dependencies) {
+                before = Math.max(before, finish.getOrDefault(dependency, 0L));
+            }
+            finish.put(task, before + task.getMillis());
+            longest = Math.max(longest, before + task.getMillis());
+        }
+        return longest;
+    }
+
+    private static Throwable failure(Task<?> task) {
+        try {
+            task.result.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        while (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+}
@@ -4,11 +4,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 public class Utils {
 
+    // the earliest time a zip entry can hold
+    private static final LocalDateTime ZIP_ENTRY_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+
     public static void sleep(long millis) {
         try {
             Thread.sleep(millis);
@@ -18,7 +28,9 @@ public class Utils {
     }
 
     /**
-     * Zips a single file and saves it to the specified output file path.
+     * Zips a single file and saves it to the specified output file path. The
+     * entry carries a fixed timestamp, so zipping the same content again yields
+     * the same bytes and the same hash as the deployed function code.
      * 
      * @param inputFilePath  the path to the file to be zipped
      * @param outputFilePath the path where the zip file should be saved
@@ -31,6 +43,7 @@ public class Utils {
 
             String fileName = new File(inputFilePath).getName();
             ZipEntry zipEntry = new ZipEntry(fileName);
+            zipEntry.setTimeLocal(ZIP_ENTRY_TIME);
             zos.putNextEntry(zipEntry);
 
             byte[] buffer = new byte[1024];
@@ -47,6 +60,59 @@ public class Utils {
         return outputFilePath;
     }
 
+    /**
+     * Computes the SHA-256 digest of the data.
+     *
+     * @param data the bytes to hash
+     * @return the digest as lower-case hex string
+     */
+    public static String sha256Hex(byte[] data) {
+        return hex(sha256(data));
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Computes the SHA-256 digest of a file without reading it into memory.
+     *
+     * @param file the file to hash
+     * @return the digest as lower-case hex string
+     */
+    public static String sha256Hex(Path file) throws IOException {
+        MessageDigest digest = sha256Digest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    public static String sha256Hex(String data) {
+        return sha256Hex(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static byte[] sha256(byte[] data) {
+        return sha256Digest().digest(data);
+    }
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static String capitalize(String str) {
         if (str == null || str.isEmpty()) {
             return str; // return the string as is if it's null or empty
@@ -0,0 +1,85 @@
+package io.github.raphaelmayer.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.function;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.transformation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.pathfinding.BreadthFirstSearch;
+import io.github.raphaelmayer.services.pathfinding.CompiledOntology;
+import io.github.raphaelmayer.services.pathfinding.SearchResult;
+import io.github.raphaelmayer.services.pathfinding.ServicePathCache;
+
+public class PathfindingServiceTest {
+
+    private static PathfindingService cachingService() {
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                function("analyse", "Analyse", Map.of(), Map.of()),
+                function("splitVideo", "Split", Map.of("type", List.of("video")), Map.of()),
+                function("transcribe", "SpeechToText", Map.of("type", List.of("audio")),
+                        Map.of("type", List.of("text"))),
+                function("translate", "Translation", Map.of("type", List.of("text"), "language", List.of("en")),
+                        Map.of("language", List.of("de")))));
+        PathfindingService service = new PathfindingService(ontology, new BreadthFirstSearch());
+        service.setPathCache(new ServicePathCache(ontology, null, 16));
+        return service;
+    }
+
+    @Test
+    public void cachesFoundPaths() {
+        PathfindingService service = cachingService();
+        Transformation transformation = transformation(Map.of("type", "audio", "language", "en"),
+                Map.of("type", "text", "language", "de"));
+
+        SearchResult planned = service.findServicePathResult(transformation);
+        SearchResult cached = service.findServicePathResult(transformation);
+
+        assertTrue(planned.isFound());
+        assertTrue(cached.isFound());
+        assertEquals(planned.getPath(), cached.getPath());
+        assertEquals(1, service.getPathCache().getHits());
+    }
+
+    @Test
+    public void doesNotCacheInfeasibleTransformations() {
+        PathfindingService service = cachingService();
+        // no function changes the language of a video
+        Transformation transformation = transformation(Map.of("type", "video", "language", "en"),
+                Map.of("type", "video", "language", "de"));
+
+        SearchResult first = service.findServicePathResult(transformation);
+        SearchResult second = service.findServicePathResult(transformation);
+
+        assertFalse(first.isFound());
+        assertFalse(second.isFound(), "a cached proof that no path exists must not turn into a path");
+        assertEquals(0, service.getPathCache().getHits());
+    }
+
+    @Test
+    public void failsOnlyTheSearchOfABrokenTransformation() {
+        PathfindingService service = cachingService();
+        Transformation valid = transformation(Map.of("type", "audio", "language", "en"),
+                Map.of("type", "text", "language", "de"));
+        Transformation broken = new Transformation();
+
+        List<CompletableFuture<List<ServiceFunction>>> paths = service.planServicePaths(
+                List.of(valid, broken, valid), ForkJoinPool.commonPool());
+
+        assertEquals(3, paths.size());
+        assertFalse(paths.get(0).join().isEmpty());
+        assertThrows(CompletionException.class, paths.get(1)::join);
+        assertEquals(paths.get(0).join(), paths.get(2).join());
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+
+/**
+ * Builds the functions and transformations of the ontologies the tests plan
+ * with, either small hand-written ones or random ones over a few types,
+ * languages and regions.
+ */
+public final class Fixtures {
+
+    public static final int TYPES = 6;
+    public static final int LANGUAGES = 5;
+    public static final int REGIONS = 3;
+
+    private Fixtures() {
+    }
+
+    public static ServiceFunction function(String name, String type, Map<String, Object> input,
+            Map<String, Object> output) {
+        ServiceFunction function = new ServiceFunction();
+        function.name = name;
+        function.type = type;
+        function.provider = "aws";
+        function.input.putAll(input);
+        function.output.putAll(output);
+        return function;
+    }
+
+    public static Transformation transformation(Map<String, Object> input, Map<String, Object> output) {
+        Transformation transformation = new Transformation();
+        transformation.input = new HashMap<>(input);
+        transformation.output = new HashMap<>(output);
+        return transformation;
+    }
+
+    /**
+     * A conversion or translation with one or two random values per attribute,
+     * restricted to a random region every third time.
+     */
+    public static ServiceFunction randomFunction(Random random, String name) {
+        ServiceFunction function = new ServiceFunction();
+        function.name = name;
+        function.provider = "aws";
+        if (random.nextBoolean()) {
+            function.type = "Conversion";
+            function.input.put("type", values(random, "t", TYPES));
+            function.output.put("type", values(random, "t", TYPES));
+        } else {
+            function.type = "Translation";
+            function.input.put("language", values(random, "l", LANGUAGES));
+            function.output.put("language", values(random, "l", LANGUAGES));
+            if (random.nextBoolean()) {
+                function.input.put("type", values(random, "t", TYPES));
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            function.regions.addAll(List.of("r" + random.nextInt(REGIONS)));
+        }
+        return function;
+    }
+
+    /**
+     * An analyse function followed by random functions named f0, f1, ...
+     */
+    public static List<ServiceFunction> randomOntology(Random random, int functions) {
+        List<ServiceFunction> ontology = new ArrayList<>();
+        ServiceFunction analyse = new ServiceFunction();
+        analyse.name = "analyse";
+        analyse.type = "Analyse";
+        analyse.provider = "aws";
+        ontology.add(analyse);
+        for (int i = 0; i < functions; i++) {
+            ontology.add(randomFunction(random, "f" + i));
+        }
+        return ontology;
+    }
+
+    public static Transformation randomTransformation(Random random) {
+        Transformation transformation = new Transformation();
+        transformation.input = new HashMap<>();
+        transformation.input.put("region", "r" + random.nextInt(REGIONS));
+        transformation.input.put("type", "t" + random.nextInt(TYPES));
+        transformation.input.put("language", "l" + random.nextInt(LANGUAGES));
+        transformation.output = new HashMap<>();
+        transformation.output.put("type", "t" + random.nextInt(TYPES));
+        transformation.output.put("language", "l" + random.nextInt(LANGUAGES));
+        return transformation;
+    }
+
+    private static List<Object> values(Random random, String prefix, int count) {
+        List<Object> values = new ArrayList<>();
+        for (int i = 1 + random.nextInt(2); i > 0; i--) {
+            String value = prefix + random.nextInt(count);
+            if (!values.contains(value)) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.randomOntology;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.randomTransformation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+
+public class KShortestPathIteratorTest {
+
+    @Test
+    public void returnsDistinctPathsInOrderOfLengthStartingWithTheBfsPath() {
+        Random random = new Random(16);
+        CompiledOntology ontology = CompiledOntology.compile(randomOntology(random, 60));
+
+        int alternatives = 0;
+        for (int i = 0; i < 30; i++) {
+            Transformation transformation = randomTransformation(random);
+            SearchResult bfs = new BreadthFirstSearch()
+                    .search(new SearchProblem(ontology, transformation.input, transformation.output));
+            KShortestPathIterator paths = new KShortestPathIterator(
+                    new SearchProblem(ontology, transformation.input, transformation.output));
+
+            List<List<ServiceFunction>> returned = new ArrayList<>();
+            while (returned.size() < 10 && paths.hasNext()) {
+                returned.add(paths.next());
+            }
+            if (!bfs.isFound()) {
+                assertTrue(returned.isEmpty(), returned.toString());
+                continue;
+            }
+            assertEquals(bfs.getPath(), returned.get(0));
+            Set<List<ServiceFunction>> distinct = new HashSet<>(returned);
+            assertEquals(returned.size(), distinct.size(), returned.toString());
+            for (int k = 1; k < returned.size(); k++) {
+                assertTrue(returned.get(k - 1).size() <= returned.get(k).size(), returned.toString());
+            }
+            alternatives += returned.size() - 1;
+        }
+        assertTrue(alternatives > 30, alternatives + " alternative paths");
+    }
+}
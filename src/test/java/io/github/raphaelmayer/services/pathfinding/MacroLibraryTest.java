@@ -0,0 +1,59 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.function;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+public class MacroLibraryTest {
+
+    @TempDir
+    Path directory;
+
+    private static List<ServiceFunction> path(String... names) {
+        List<ServiceFunction> path = new ArrayList<>();
+        for (String name : names) {
+            path.add(function(name, "Conversion", Map.of(), Map.of()));
+        }
+        return path;
+    }
+
+    @Test
+    public void keepsMacrosAcrossRestarts() {
+        String file = directory.resolve("macros.json").toString();
+        MacroLibrary library = new MacroLibrary(file, 2, 3, 10);
+        library.record(path("transcribe", "translate", "synthesize"));
+        library.record(path("transcribe", "translate"));
+        library.record(path("split", "transcribe", "translate"));
+        library.save();
+
+        MacroLibrary restored = new MacroLibrary(file, 2, 3, 10);
+
+        assertEquals(library.macros(), restored.macros());
+        assertEquals(List.of(List.of("transcribe", "translate")), restored.macros());
+        assertEquals(3, restored.getCount(List.of("transcribe", "translate")));
+        assertEquals(1, restored.getCount(List.of("transcribe", "translate", "synthesize")));
+    }
+
+    @Test
+    public void addsRecordedPathsToTheRestoredCounts() {
+        String file = directory.resolve("macros.json").toString();
+        MacroLibrary library = new MacroLibrary(file, 2, 2, 10);
+        library.record(path("transcribe", "translate"));
+        library.save();
+
+        MacroLibrary restored = new MacroLibrary(file, 2, 2, 10);
+        restored.record(path("transcribe", "translate"));
+        restored.save();
+
+        assertEquals(2, new MacroLibrary(file, 2, 2, 10).getCount(List.of("transcribe", "translate")));
+    }
+}
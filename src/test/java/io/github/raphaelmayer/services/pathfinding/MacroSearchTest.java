@@ -0,0 +1,64 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.function;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+public class MacroSearchTest {
+
+    private static SearchProblem problem(CompiledOntology ontology, List<List<String>> macros, String from,
+            String to) {
+        SearchProblem problem = new SearchProblem(ontology, Map.of("type", from), Map.of("type", to));
+        problem.setMacros(macros);
+        return problem;
+    }
+
+    @Test
+    public void prefersFewerServicesOverAMacro() {
+        ServiceFunction direct = function("direct", "Conversion", Map.of("type", List.of("x")),
+                Map.of("type", List.of("y")));
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                direct,
+                function("toM", "Conversion", Map.of("type", List.of("x")), Map.of("type", List.of("m"))),
+                function("fromM", "Conversion", Map.of("type", List.of("m")), Map.of("type", List.of("y")))));
+
+        SearchResult result = new MacroSearch()
+                .search(problem(ontology, List.of(List.of("toM", "fromM")), "x", "y"));
+
+        assertEquals(List.of(direct), result.getPath());
+        assertTrue(result.isOptimal());
+    }
+
+    @Test
+    public void findsPathsAsShortAsBfsWithFewerExpansions() {
+        // a chain t0 -> t1 -> ... -> t6 with a detour from every type
+        List<ServiceFunction> functions = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            functions.add(function("step" + i, "Conversion", Map.of("type", List.of("t" + i)),
+                    Map.of("type", List.of("t" + (i + 1)))));
+            functions.add(function("detour" + i, "Conversion", Map.of("type", List.of("t" + i)),
+                    Map.of("type", List.of("d" + i))));
+        }
+        CompiledOntology ontology = CompiledOntology.compile(functions);
+        List<List<String>> macros = List.of(List.of("step3", "step4", "step5"), List.of("step0", "step1"));
+
+        SearchResult bfs = new BreadthFirstSearch().search(problem(ontology, macros, "t0", "t6"));
+        SearchResult withoutMacros = new MacroSearch().search(problem(ontology, List.of(), "t0", "t6"));
+        SearchResult withMacros = new MacroSearch().search(problem(ontology, macros, "t0", "t6"));
+
+        assertEquals(bfs.getPath(), withoutMacros.getPath());
+        assertEquals(bfs.getStats().getNodesExpanded(), withoutMacros.getStats().getNodesExpanded());
+        assertEquals(bfs.getPath(), withMacros.getPath());
+        assertTrue(withMacros.isOptimal());
+        assertTrue(withMacros.getStats().getNodesExpanded() < bfs.getStats().getNodesExpanded(),
+                withMacros.getStats() + " vs " + bfs.getStats());
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.function;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+
+public class MemoryBoundedSearchTest {
+
+    // a chain t0 -> t1 -> ... -> t8 with a detour from every type
+    private static final CompiledOntology CHAIN = chainOntology();
+
+    private static CompiledOntology chainOntology() {
+        List<ServiceFunction> functions = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            functions.add(function("detour" + i, "Conversion", Map.of("type", List.of("t" + i)),
+                    Map.of("type", List.of("d" + i))));
+            functions.add(function("step" + i, "Conversion", Map.of("type", List.of("t" + i, "d" + i)),
+                    Map.of("type", List.of("t" + (i + 1)))));
+        }
+        return CompiledOntology.compile(functions);
+    }
+
+    private static SearchProblem chain() {
+        return new SearchProblem(CHAIN, Map.of("type", "t0"), Map.of("type", "t8"));
+    }
+
+    private static void assertCompletedWithinBudget(SearchResult result) {
+        assertTrue(result.isFound(), result.toString());
+        assertTrue(result.isBudgetExhausted());
+        assertFalse(result.isOptimal());
+        assertEquals("step7", result.getPath().get(result.getPath().size() - 1).name);
+    }
+
+    @Test
+    public void beamSearchCompletesThePathWhenTheBudgetRunsOut() {
+        assertCompletedWithinBudget(new BeamSearch(4, 10).search(chain()));
+    }
+
+    @Test
+    public void idaStarCompletesThePathWhenTheBudgetRunsOut() {
+        assertCompletedWithinBudget(new IterativeDeepeningAStarSearch(20).search(chain()));
+    }
+
+    @Test
+    public void searchesWithinTheBudgetAreOptimal() {
+        SearchResult bfs = new BreadthFirstSearch().search(chain());
+        SearchResult beam = new BeamSearch(4, 1000).search(chain());
+        SearchResult idaStar = new IterativeDeepeningAStarSearch(1000).search(chain());
+
+        assertEquals(bfs.getPath(), beam.getPath());
+        assertTrue(beam.isOptimal());
+        assertEquals(bfs.getPath(), idaStar.getPath());
+        assertTrue(idaStar.isOptimal());
+    }
+
+    @Test
+    public void beamSearchReachesDroppedStatesOnAnotherRoute() {
+        // the beam keeps toT over toB, the goal is only reachable through b
+        ServiceFunction toT = function("toT", "Conversion", Map.of("type", List.of("a")),
+                Map.of("type", List.of("t")));
+        ServiceFunction tToB = function("tToB", "Conversion", Map.of("type", List.of("t")),
+                Map.of("type", List.of("b")));
+        ServiceFunction finish = function("finish", "Translation",
+                Map.of("type", List.of("b"), "language", List.of("x")),
+                Map.of("type", List.of("t"), "language", List.of("l")));
+        CompiledOntology ontology = CompiledOntology.compile(List.of(toT,
+                function("toB", "Conversion", Map.of("type", List.of("a")), Map.of("type", List.of("b"))),
+                tToB, finish));
+
+        SearchResult result = new BeamSearch(1, 1000).search(new SearchProblem(ontology,
+                Map.of("type", "a", "language", "x"), Map.of("type", "t", "language", "l")));
+
+        assertEquals(List.of(toT, tToB, finish), result.getPath());
+        assertFalse(result.isOptimal());
+    }
+}
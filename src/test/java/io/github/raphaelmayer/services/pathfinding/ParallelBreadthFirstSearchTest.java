@@ -0,0 +1,39 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.randomOntology;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.randomTransformation;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.raphaelmayer.models.Transformation;
+
+public class ParallelBreadthFirstSearchTest {
+
+    @Test
+    public void returnsTheBfsPathAtEveryParallelism() {
+        Random random = new Random(13);
+        CompiledOntology ontology = CompiledOntology.compile(randomOntology(random, 300));
+        SearchStrategy[] strategies = { new ParallelBreadthFirstSearch(1), new ParallelBreadthFirstSearch(4),
+                new ParallelBreadthFirstSearch(16) };
+
+        int found = 0;
+        for (int i = 0; i < 40; i++) {
+            Transformation transformation = randomTransformation(random);
+            SearchResult bfs = new BreadthFirstSearch()
+                    .search(new SearchProblem(ontology, transformation.input, transformation.output));
+            for (SearchStrategy strategy : strategies) {
+                SearchResult result = strategy
+                        .search(new SearchProblem(ontology, transformation.input, transformation.output));
+                assertEquals(bfs.getPath(), result.getPath(), transformation.input + " -> " + transformation.output);
+            }
+            if (bfs.isFound()) {
+                found++;
+            }
+        }
+        assertTrue(found > 20, found + " of 40 transformations found");
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.function;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.transformation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.services.PathfindingService;
+
+public class PlanningConstraintsTest {
+
+    private static ServiceFunction transcribe(String name) {
+        return function(name, "SpeechToText", Map.of("type", List.of("audio")), Map.of("type", List.of("text")));
+    }
+
+    private static ServiceFunction inRegion(ServiceFunction function, String region) {
+        function.regions.add(region);
+        return function;
+    }
+
+    private static ServiceFunction limited(ServiceFunction function, String limit, Object value) {
+        function.limits.put(limit, value);
+        return function;
+    }
+
+    private static ServiceFunction split() {
+        return function("splitAudio", "Split", Map.of("type", List.of("audio")), Map.of());
+    }
+
+    private static SearchProblem problem(CompiledOntology ontology, Map<String, Object> input) {
+        Map<String, Object> inputState = new HashMap<>(input);
+        inputState.put("type", "audio");
+        return new SearchProblem(ontology, inputState, Map.of("type", "text"),
+                PlanningConstraints.fromInput(ontology, inputState));
+    }
+
+    @Test
+    public void excludesFunctionsOutsideTheRegion() {
+        ServiceFunction us = inRegion(transcribe("transcribeUs"), "us-east-1");
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                inRegion(transcribe("transcribeEu"), "eu-central-1"), us));
+
+        SearchResult result = new BreadthFirstSearch().search(problem(ontology, Map.of("region", "us-east-1")));
+
+        assertEquals(List.of(us), result.getPath());
+    }
+
+    @Test
+    public void everyStrategyPlansWhenMostApplicableFunctionsAreExcluded() {
+        // more applicable functions are excluded than the others have operators
+        ServiceFunction allowed = inRegion(transcribe("transcribe1"), "r1");
+        List<ServiceFunction> functions = new ArrayList<>();
+        functions.add(allowed);
+        for (int i = 2; i <= 4; i++) {
+            functions.add(inRegion(transcribe("transcribe" + i), "r2"));
+        }
+        CompiledOntology ontology = CompiledOntology.compile(functions);
+
+        for (String name : SearchStrategies.NAMES) {
+            SearchResult result = SearchStrategies.fromName(name, 1000, 4, 2)
+                    .search(problem(ontology, Map.of("region", "r1")));
+            assertEquals(List.of(allowed), result.getPath(), name);
+        }
+    }
+
+    @Test
+    public void excludesFunctionsWhoseSizeLimitIsExceeded() {
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                limited(transcribe("transcribe"), "maxFileSize", 100)));
+
+        assertFalse(problem(ontology, Map.of("fileSize", 500)).isFeasible());
+        assertTrue(problem(ontology, Map.of("fileSize", 50)).isFeasible());
+    }
+
+    @Test
+    public void excludesFunctionsWhoseDurationLimitIsExceeded() {
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                limited(transcribe("transcribe"), "maxDuration", 600)));
+
+        assertFalse(problem(ontology, Map.of("duration", 3600)).isFeasible());
+        assertTrue(problem(ontology, Map.of("duration", 60)).isFeasible());
+    }
+
+    @Test
+    public void splitInputsMeetTheSizeAndDurationLimits() {
+        ServiceFunction transcribe = limited(limited(transcribe("transcribe"), "maxFileSize", 100), "maxDuration",
+                600);
+        CompiledOntology ontology = CompiledOntology.compile(List.of(split(), transcribe));
+
+        SearchProblem problem = problem(ontology, Map.of("fileSize", 500, "duration", 3600));
+
+        assertTrue(problem.isFeasible());
+        assertEquals(List.of(transcribe), new BreadthFirstSearch().search(problem).getPath());
+    }
+
+    @Test
+    public void excludesFunctionsWhoseRateLimitIsBelowTheFileCount() {
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                limited(transcribe("transcribe"), "rateLimit", 10)));
+
+        assertFalse(problem(ontology, Map.of("fileCount", 20)).isFeasible());
+        assertTrue(problem(ontology, Map.of("fileCount", 10)).isFeasible());
+        // without a fileCount, every file name is a file
+        assertFalse(problem(ontology, Map.of("fileNames", List.of(
+                "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11"))).isFeasible());
+    }
+
+    @Test
+    public void fallsBackToTheBatchRateLimit() {
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                limited(transcribe("transcribe"), "rateLimitBatch", 250)));
+
+        assertFalse(problem(ontology, Map.of("fileCount", 300)).isFeasible());
+        assertTrue(problem(ontology, Map.of("fileCount", 250)).isFeasible());
+    }
+
+    @Test
+    public void ignoresLimitsThatAreNotNumbers() {
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                limited(limited(transcribe("transcribe"), "maxFileSize", ""), "rateLimit", "")));
+
+        assertTrue(problem(ontology, Map.of("fileSize", 500, "fileCount", 20)).isFeasible());
+    }
+
+    @Test
+    public void rejectsInfeasibleRequestsWithoutSearching() {
+        CompiledOntology ontology = CompiledOntology.compile(List.of(
+                inRegion(transcribe("transcribe"), "eu-central-1")));
+        PathfindingService service = new PathfindingService(ontology, new BreadthFirstSearch());
+
+        SearchResult result = service.findServicePathResult(transformation(
+                Map.of("type", "audio", "region", "us-east-1"), Map.of("type", "text")));
+
+        assertFalse(result.isFound());
+        assertEquals(0, service.getLastSearchStats().getNodesExpanded());
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.randomFunction;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.randomOntology;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.randomTransformation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.github.raphaelmayer.models.OntologyChange;
+import io.github.raphaelmayer.models.ServiceFunction;
+import io.github.raphaelmayer.models.Transformation;
+import io.github.raphaelmayer.services.PathfindingService;
+
+public class ServicePathCacheTest {
+
+    @TempDir
+    Path cacheDirectory;
+
+    private int created;
+
+    private OntologyChange randomChange(Random random, CompiledOntology ontology) {
+        int kind = random.nextInt(3);
+        if (kind == 0 || ontology.size() < 10) {
+            return OntologyChange.added(randomFunction(random, "added" + created++));
+        }
+        String name = ontology.function(1 + random.nextInt(ontology.size() - 1)).name;
+        if (kind == 1) {
+            return OntologyChange.removed(name);
+        }
+        return OntologyChange.modified(randomFunction(random, name));
+    }
+
+    @Test
+    public void cachedPathsMatchFreshPlansAfterRandomChanges() {
+        Random random = new Random(18);
+        CompiledOntology ontology = CompiledOntology.compile(randomOntology(random, 40));
+        List<Transformation> transformations = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            transformations.add(randomTransformation(random));
+        }
+        PathfindingService service = new PathfindingService(ontology, new BreadthFirstSearch());
+        // most paths only live on disk, so both tiers are checked
+        service.setPathCache(new ServicePathCache(ontology, cacheDirectory.toString(), 32));
+        service.findServicePaths(transformations);
+
+        int compared = 0;
+        for (int change = 0; change < 60; change++) {
+            service.applyOntologyChange(randomChange(random, service.getOntology()));
+
+            CompiledOntology current = service.getOntology();
+            PathfindingService fresh = new PathfindingService(current, new BreadthFirstSearch());
+            for (Transformation transformation : transformations) {
+                String key = ServicePathCache.canonicalKey(current, transformation, BreadthFirstSearch.NAME);
+                List<ServiceFunction> cached = service.getPathCache().get(key);
+                if (cached == null) {
+                    continue;
+                }
+                SearchResult planned = fresh.findServicePathResult(transformation);
+                assertTrue(planned.isFound(), "cached a path for " + transformation + " that no longer exists");
+                assertEquals(planned.getPath().size(), cached.size(), "cached " + cached + " for " + transformation
+                        + ", but the shortest path is " + planned.getPath());
+                compared++;
+            }
+            // requests keep filling the cache between the changes
+            service.findServicePaths(transformations.subList(0, 100));
+        }
+        assertTrue(compared > 1000, "only " + compared + " cached paths were compared");
+    }
+
+    @Test
+    public void checksEntriesOnDiskWhenTheyAreRead() throws Exception {
+        Random random = new Random(3);
+        CompiledOntology ontology = CompiledOntology.compile(randomOntology(random, 40));
+        PathfindingService service = new PathfindingService(ontology, new BreadthFirstSearch());
+        ServicePathCache cache = new ServicePathCache(ontology, cacheDirectory.toString(), 1);
+        service.setPathCache(cache);
+
+        // find a transformation with a path of at least one searched function
+        Transformation transformation;
+        List<ServiceFunction> path;
+        do {
+            transformation = randomTransformation(random);
+            path = service.findServicePath(transformation);
+        } while (path.size() < 2);
+        String key = ServicePathCache.canonicalKey(ontology, transformation, BreadthFirstSearch.NAME);
+        Path file = cacheDirectory.resolve(ontology.getContentHash()).resolve(key + ".json");
+        assertTrue(Files.isRegularFile(file));
+
+        // evict the path from the memory tier, so the change does not see it
+        Transformation other;
+        do {
+            other = randomTransformation(random);
+        } while (!service.findServicePathResult(other).isFound()
+                || ServicePathCache.canonicalKey(ontology, other, BreadthFirstSearch.NAME).equals(key));
+        assertTrue(service.applyOntologyChange(OntologyChange.removed(path.get(1).name)) <= 1);
+
+        // the directory stays the same, the entry is dropped once it is read
+        assertTrue(Files.isRegularFile(file));
+        assertNull(cache.get(ServicePathCache.canonicalKey(service.getOntology(), transformation,
+                BreadthFirstSearch.NAME)));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void keepsUnaffectedEntriesOnDisk() {
+        Random random = new Random(5);
+        CompiledOntology ontology = CompiledOntology.compile(randomOntology(random, 40));
+        PathfindingService service = new PathfindingService(ontology, new BreadthFirstSearch());
+        ServicePathCache cache = new ServicePathCache(ontology, cacheDirectory.toString(), 1);
+        service.setPathCache(cache);
+
+        Transformation transformation;
+        do {
+            transformation = randomTransformation(random);
+        } while (!service.findServicePathResult(transformation).isFound());
+        String key = ServicePathCache.canonicalKey(ontology, transformation, BreadthFirstSearch.NAME);
+        // evict it from the memory tier
+        Transformation other;
+        do {
+            other = randomTransformation(random);
+        } while (!service.findServicePathResult(other).isFound()
+                || ServicePathCache.canonicalKey(ontology, other, BreadthFirstSearch.NAME).equals(key));
+
+        // a function no path can use
+        ServiceFunction unreachable = new ServiceFunction();
+        unreachable.name = "unreachable";
+        unreachable.type = "Conversion";
+        unreachable.provider = "aws";
+        unreachable.input.put("type", List.of("t0"));
+        unreachable.input.put("language", List.of("none"));
+        unreachable.output.put("type", List.of("t1"));
+        service.applyOntologyChange(OntologyChange.added(unreachable));
+
+        assertNotNull(cache.get(ServicePathCache.canonicalKey(service.getOntology(), transformation,
+                BreadthFirstSearch.NAME)));
+    }
+
+    @Test
+    public void movesTheFilesOfEntriesWhoseKeyChanged() {
+        Random random = new Random(7);
+        CompiledOntology ontology = CompiledOntology.compile(randomOntology(random, 40));
+        PathfindingService service = new PathfindingService(ontology, new BreadthFirstSearch());
+        ServicePathCache cache = new ServicePathCache(ontology, cacheDirectory.toString(), 4);
+        service.setPathCache(cache);
+
+        // no function reads the format yet, so it is not part of the key
+        Transformation transformation;
+        do {
+            transformation = randomTransformation(random);
+            transformation.input.put("format", "mp3");
+        } while (!service.findServicePathResult(transformation).isFound());
+        String key = ServicePathCache.canonicalKey(ontology, transformation, BreadthFirstSearch.NAME);
+        Path directory = cacheDirectory.resolve(ontology.getContentHash());
+        assertTrue(Files.isRegularFile(directory.resolve(key + ".json")));
+
+        ServiceFunction unreachable = new ServiceFunction();
+        unreachable.name = "unreachable";
+        unreachable.type = "Conversion";
+        unreachable.provider = "aws";
+        unreachable.input.put("format", List.of("wav"));
+        unreachable.output.put("format", List.of("ogg"));
+        service.applyOntologyChange(OntologyChange.added(unreachable));
+
+        String movedKey = ServicePathCache.canonicalKey(service.getOntology(), transformation,
+                BreadthFirstSearch.NAME);
+        assertFalse(movedKey.equals(key));
+        assertFalse(Files.exists(directory.resolve(key + ".json")));
+        assertTrue(Files.isRegularFile(directory.resolve(movedKey + ".json")));
+        assertNotNull(cache.get(movedKey));
+    }
+}
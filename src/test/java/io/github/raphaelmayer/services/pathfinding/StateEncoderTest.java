@@ -0,0 +1,63 @@
+package io.github.raphaelmayer.services.pathfinding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static io.github.raphaelmayer.services.pathfinding.Fixtures.function;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.raphaelmayer.models.OntologyChange;
+import io.github.raphaelmayer.models.ServiceFunction;
+
+public class StateEncoderTest {
+
+    // a function accepting the given number of values for the key
+    private static ServiceFunction accepting(String name, String key, int values) {
+        List<Object> accepted = new ArrayList<>();
+        for (int i = 0; i < values; i++) {
+            accepted.add(name + i);
+        }
+        return function(name, "transform", Map.of(key, accepted), Map.of());
+    }
+
+    @Test
+    public void encodesAndDecodesStates() {
+        StateEncoder encoder = new StateEncoder(List.of(accepting("a", "format", 5), accepting("b", "language", 2)));
+
+        long state = encoder.encode(Map.of("format", "a3", "language", "b1"));
+
+        assertEquals(Map.of("format", "a3", "language", "b1"), encoder.decode(state));
+    }
+
+    @Test
+    public void rejectsAttributesWiderThanAState() {
+        // 5 keys with 6000 values each need 13 bits per key, 65 in total
+        List<ServiceFunction> functions = new ArrayList<>();
+        for (int k = 0; k < 5; k++) {
+            functions.add(accepting("f" + k, "key" + k, 6000));
+        }
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CompiledOntology.compile(functions));
+        assertTrue(e.getMessage().contains("65 bits"), e.getMessage());
+    }
+
+    @Test
+    public void rejectsChangesThatOverflowAState() {
+        List<ServiceFunction> functions = new ArrayList<>();
+        for (int k = 0; k < 4; k++) {
+            functions.add(accepting("f" + k, "key" + k, 6000));
+        }
+        CompiledOntology ontology = CompiledOntology.compile(functions);
+
+        OntologyChange change = OntologyChange.added(accepting("f4", "key4", 6000));
+
+        assertThrows(IllegalArgumentException.class, () -> ontology.apply(change));
+        assertEquals(4, ontology.getFunctions().size());
+    }
+}